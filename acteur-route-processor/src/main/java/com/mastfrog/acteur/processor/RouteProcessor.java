@@ -0,0 +1,435 @@
+/* 
+ * The MIT License
+ *
+ * Copyright 2013 Tim Boudreau.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.mastfrog.acteur.processor;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.Messager;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.annotation.processing.SupportedOptions;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.AnnotationMirror;
+import javax.lang.model.element.AnnotationValue;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.NestingKind;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.util.Elements;
+import javax.lang.model.util.Types;
+import javax.tools.Diagnostic;
+import javax.tools.JavaFileObject;
+
+/**
+ * Generates a <code>GeneratedRoutes</code> class implementing
+ * <code>com.mastfrog.acteur.CompiledRoutes</code>, and a
+ * <code>GeneratedRoutesModule</code> which binds it, from the &#064;Route
+ * annotations on the pages in a compilation. Route patterns are checked at
+ * compile time, and each page's paths are matched by a straight-line
+ * sequence of length and literal element comparisons.
+ * <p/>
+ * The binding is named for the package, so that the modules generated for
+ * several libraries of pages can be installed in one application.
+ * <p/>
+ * The classes are generated into the package named by the
+ * <code>acteur.routes.package</code> option, or by default the package the
+ * pages have in common.
+ *
+ * @author Tim Boudreau
+ */
+@SupportedAnnotationTypes(RouteProcessor.ROUTE)
+@SupportedOptions(RouteProcessor.PACKAGE_OPTION)
+public class RouteProcessor extends AbstractProcessor {
+
+    public static final String PACKAGE_OPTION = "acteur.routes.package";
+    public static final String ROUTES_CLASS = "GeneratedRoutes";
+    public static final String MODULE_CLASS = "GeneratedRoutesModule";
+    static final String ROUTE = "com.mastfrog.acteur.Route";
+    static final String PAGE = "com.mastfrog.acteur.Page";
+    private boolean generated;
+
+    @Override
+    public SourceVersion getSupportedSourceVersion() {
+        return SourceVersion.latestSupported();
+    }
+
+    @Override
+    public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+        Elements elements = processingEnv.getElementUtils();
+        TypeElement routeType = elements.getTypeElement(ROUTE);
+        TypeElement pageType = elements.getTypeElement(PAGE);
+        if (routeType == null || pageType == null) {
+            return false;
+        }
+        Messager messager = processingEnv.getMessager();
+        List<RouteInfo> routes = new ArrayList<>();
+        boolean failed = false;
+        for (Element e : roundEnv.getElementsAnnotatedWith(routeType)) {
+            RouteInfo info = RouteInfo.create(e, routeType, pageType, elements, processingEnv.getTypeUtils(), messager);
+            if (info == null) {
+                failed = true;
+            } else {
+                routes.add(info);
+            }
+        }
+        if (routes.isEmpty() || failed) {
+            return true;
+        }
+        if (generated) {
+            for (RouteInfo info : routes) {
+                messager.printMessage(Diagnostic.Kind.WARNING, "Routes were "
+                        + "already generated in an earlier round;  this page's "
+                        + "route will be matched at runtime", info.type);
+            }
+            return true;
+        }
+        generated = true;
+        String pkg = processingEnv.getOptions().get(PACKAGE_OPTION);
+        if (pkg == null) {
+            pkg = commonPackage(routes, elements);
+        }
+        for (RouteInfo info : routes) {
+            if (!info.isAccessibleFrom(pkg, elements)) {
+                messager.printMessage(Diagnostic.Kind.ERROR, "Routed pages "
+                        + "must be public to be matched from " + pkg, info.type);
+                failed = true;
+            }
+        }
+        if (failed) {
+            return true;
+        }
+        try {
+            write(pkg, ROUTES_CLASS, routesSource(pkg, routes), routes);
+            write(pkg, MODULE_CLASS, moduleSource(pkg), routes);
+        } catch (IOException ex) {
+            messager.printMessage(Diagnostic.Kind.ERROR, "Could not generate "
+                    + "routes: " + ex);
+        }
+        return true;
+    }
+
+    private void write(String pkg, String name, String source, List<RouteInfo> routes) throws IOException {
+        Element[] originating = new Element[routes.size()];
+        for (int i = 0; i < originating.length; i++) {
+            originating[i] = routes.get(i).type;
+        }
+        JavaFileObject file = processingEnv.getFiler().createSourceFile(
+                pkg.isEmpty() ? name : pkg + '.' + name, originating);
+        try (PrintWriter out = new PrintWriter(file.openWriter())) {
+            out.print(source);
+        }
+    }
+
+    private static String commonPackage(List<RouteInfo> routes, Elements elements) {
+        String result = null;
+        for (RouteInfo info : routes) {
+            String pkg = elements.getPackageOf(info.type).getQualifiedName().toString();
+            if (result == null) {
+                result = pkg;
+            }
+            while (!result.isEmpty() && !pkg.equals(result) && !pkg.startsWith(result + '.')) {
+                int ix = result.lastIndexOf('.');
+                result = ix < 0 ? "" : result.substring(0, ix);
+            }
+        }
+        return result;
+    }
+
+    static String routesSource(String pkg, List<RouteInfo> routes) {
+        Map<String, String> constants = new LinkedHashMap<>();
+        for (RouteInfo info : routes) {
+            for (String[] pattern : info.patterns) {
+                for (String element : pattern) {
+                    if (RouteInfo.isLiteral(element) && !constants.containsKey(element)) {
+                        constants.put(element, "E" + constants.size());
+                    }
+                }
+            }
+        }
+        StringBuilder sb = new StringBuilder();
+        if (!pkg.isEmpty()) {
+            sb.append("package ").append(pkg).append(";\n\n");
+        }
+        sb.append("import com.google.inject.Singleton;\n")
+                .append("import com.mastfrog.acteur.CompiledRoutes;\n")
+                .append("import com.mastfrog.acteur.Page;\n")
+                .append("import com.mastfrog.url.Path;\n")
+                .append("import com.mastfrog.url.PathElement;\n")
+                .append("import java.util.Arrays;\n")
+                .append("import java.util.BitSet;\n")
+                .append("import java.util.Collections;\n")
+                .append("import java.util.List;\n\n")
+                .append("/**\n * Generated by ").append(RouteProcessor.class.getName())
+                .append(" from the routes of ").append(routes.size()).append(" pages.\n */\n")
+                .append("@Singleton\n")
+                .append("public final class ").append(ROUTES_CLASS).append(" implements CompiledRoutes {\n\n");
+        for (Map.Entry<String, String> e : constants.entrySet()) {
+            sb.append("    private static final PathElement ").append(e.getValue())
+                    .append(" = new PathElement(").append(quote(e.getKey())).append(");\n");
+        }
+        sb.append("    private static final List<Class<? extends Page>> TYPES = Collections.unmodifiableList(\n")
+                .append("            Arrays.<Class<? extends Page>>asList(");
+        for (int i = 0; i < routes.size(); i++) {
+            sb.append(i == 0 ? "\n" : ",\n").append("                ")
+                    .append(routes.get(i).type.getQualifiedName()).append(".class");
+        }
+        sb.append("));\n\n")
+                .append("    @Override\n")
+                .append("    public List<Class<? extends Page>> types() {\n")
+                .append("        return TYPES;\n")
+                .append("    }\n\n")
+                .append("    @Override\n")
+                .append("    public void match(Path path, BitSet into) {\n")
+                .append("        int size = path.size();\n");
+        for (int i = 0; i < routes.size(); i++) {
+            RouteInfo info = routes.get(i);
+            sb.append("        // ").append(info.type.getQualifiedName()).append('\n');
+            String test = info.test(constants);
+            if ("true".equals(test)) {
+                sb.append("        into.set(").append(i).append(");\n");
+            } else {
+                sb.append("        if (").append(test).append(") {\n")
+                        .append("            into.set(").append(i).append(");\n")
+                        .append("        }\n");
+            }
+        }
+        sb.append("    }\n}\n");
+        return sb.toString();
+    }
+
+    static String moduleSource(String pkg) {
+        StringBuilder sb = new StringBuilder();
+        if (!pkg.isEmpty()) {
+            sb.append("package ").append(pkg).append(";\n\n");
+        }
+        return sb.append("import com.google.inject.AbstractModule;\n")
+                .append("import com.google.inject.name.Names;\n")
+                .append("import com.mastfrog.acteur.CompiledRoutes;\n\n")
+                .append("/**\n * Generated by ").append(RouteProcessor.class.getName())
+                .append(";  binds ").append(ROUTES_CLASS).append(".\n */\n")
+                .append("public final class ").append(MODULE_CLASS).append(" extends AbstractModule {\n\n")
+                .append("    @Override\n")
+                .append("    protected void configure() {\n")
+                .append("        bind(CompiledRoutes.class).annotatedWith(Names.named(")
+                .append(quote(pkg)).append(")).to(").append(ROUTES_CLASS).append(".class);\n")
+                .append("    }\n}\n").toString();
+    }
+
+    static String quote(String s) {
+        StringBuilder sb = new StringBuilder("\"");
+        for (char c : s.toCharArray()) {
+            switch (c) {
+                case '"':
+                case '\\':
+                    sb.append('\\').append(c);
+                    break;
+                default:
+                    if (c < ' ' || c > '~') {
+                        sb.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        sb.append(c);
+                    }
+            }
+        }
+        return sb.append('"').toString();
+    }
+
+    /**
+     * The contents of one page's &#064;Route annotation.
+     */
+    static final class RouteInfo {
+
+        final TypeElement type;
+        final List<String[]> patterns = new ArrayList<>();
+        int minimumPathLength;
+        int maximumPathLength = Integer.MAX_VALUE;
+
+        private RouteInfo(TypeElement type) {
+            this.type = type;
+        }
+
+        static RouteInfo create(Element e, TypeElement routeType, TypeElement pageType, Elements elements, Types types, Messager messager) {
+            if (e.getKind() != ElementKind.CLASS || e.getModifiers().contains(Modifier.ABSTRACT)
+                    || !types.isAssignable(e.asType(), types.erasure(pageType.asType()))) {
+                messager.printMessage(Diagnostic.Kind.ERROR, "@Route may only "
+                        + "be used on concrete subclasses of " + PAGE, e);
+                return null;
+            }
+            TypeElement type = (TypeElement) e;
+            if (type.getNestingKind() == NestingKind.MEMBER && !type.getModifiers().contains(Modifier.STATIC)) {
+                messager.printMessage(Diagnostic.Kind.ERROR, "Routed pages "
+                        + "may not be non-static inner classes", e);
+                return null;
+            }
+            if (type.getNestingKind() == NestingKind.LOCAL || type.getNestingKind() == NestingKind.ANONYMOUS) {
+                messager.printMessage(Diagnostic.Kind.ERROR, "Routed pages "
+                        + "may not be local classes", e);
+                return null;
+            }
+            AnnotationMirror mirror = null;
+            for (AnnotationMirror m : e.getAnnotationMirrors()) {
+                if (m.getAnnotationType().asElement().equals(routeType)) {
+                    mirror = m;
+                }
+            }
+            if (mirror == null) {
+                return null;
+            }
+            RouteInfo result = new RouteInfo(type);
+            boolean hasMethods = false;
+            boolean methodNotAllowed = false;
+            for (Map.Entry<? extends ExecutableElement, ? extends AnnotationValue> entry
+                    : elements.getElementValuesWithDefaults(mirror).entrySet()) {
+                String name = entry.getKey().getSimpleName().toString();
+                Object value = entry.getValue().getValue();
+                switch (name) {
+                    case "methods":
+                        hasMethods = !((List<?>) value).isEmpty();
+                        break;
+                    case "methodNotAllowed":
+                        methodNotAllowed = (Boolean) value;
+                        break;
+                    case "path":
+                        for (Object o : (List<?>) value) {
+                            String pattern = (String) ((AnnotationValue) o).getValue();
+                            String[] parsed = parse(pattern);
+                            if (parsed == null) {
+                                messager.printMessage(Diagnostic.Kind.ERROR, "** may only "
+                                        + "be the last element of a route, but found '"
+                                        + pattern + "'", e, mirror);
+                                return null;
+                            }
+                            result.patterns.add(parsed);
+                        }
+                        break;
+                    case "minimumPathLength":
+                        result.minimumPathLength = (Integer) value;
+                        break;
+                    case "maximumPathLength":
+                        result.maximumPathLength = (Integer) value;
+                        break;
+                    default:
+                        break;
+                }
+            }
+            if (methodNotAllowed && !hasMethods) {
+                messager.printMessage(Diagnostic.Kind.ERROR, "methodNotAllowed "
+                        + "is meaningless without methods", e, mirror);
+                return null;
+            }
+            if (result.minimumPathLength < 0 || result.maximumPathLength < result.minimumPathLength) {
+                messager.printMessage(Diagnostic.Kind.ERROR, "Bad path length "
+                        + "bounds " + result.minimumPathLength + " to "
+                        + result.maximumPathLength, e, mirror);
+                return null;
+            }
+            return result;
+        }
+
+        static String[] parse(String pattern) {
+            List<String> result = new ArrayList<>();
+            for (String element : pattern.split("/")) {
+                if (!element.isEmpty()) {
+                    result.add(element);
+                }
+            }
+            for (int i = 0; i < result.size() - 1; i++) {
+                if ("**".equals(result.get(i))) {
+                    return null;
+                }
+            }
+            return result.toArray(new String[result.size()]);
+        }
+
+        static boolean isLiteral(String element) {
+            return !"*".equals(element) && !"**".equals(element)
+                    && !(element.startsWith("{") && element.endsWith("}"));
+        }
+
+        boolean isAccessibleFrom(String pkg, Elements elements) {
+            for (Element e = type; e instanceof TypeElement; e = e.getEnclosingElement()) {
+                if (!e.getModifiers().contains(Modifier.PUBLIC)
+                        && !elements.getPackageOf(type).getQualifiedName().contentEquals(pkg)) {
+                    return false;
+                }
+                if (e.getModifiers().contains(Modifier.PRIVATE)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        String test(Map<String, String> constants) {
+            List<String> tests = new ArrayList<>();
+            if (minimumPathLength > 0) {
+                tests.add("size >= " + minimumPathLength);
+            }
+            if (maximumPathLength != Integer.MAX_VALUE) {
+                tests.add("size <= " + maximumPathLength);
+            }
+            if (!patterns.isEmpty()) {
+                StringBuilder any = new StringBuilder();
+                for (String[] pattern : patterns) {
+                    if (any.length() > 0) {
+                        any.append("\n                || ");
+                    }
+                    any.append(patternTest(pattern, constants));
+                }
+                tests.add(patterns.size() == 1 ? any.toString() : "(" + any + ")");
+            }
+            if (tests.isEmpty()) {
+                return "true";
+            }
+            StringBuilder sb = new StringBuilder();
+            for (String t : tests) {
+                if (sb.length() > 0) {
+                    sb.append(" && ");
+                }
+                sb.append(t);
+            }
+            return sb.toString();
+        }
+
+        private static String patternTest(String[] pattern, Map<String, String> constants) {
+            boolean remainder = pattern.length > 0 && "**".equals(pattern[pattern.length - 1]);
+            int length = remainder ? pattern.length - 1 : pattern.length;
+            StringBuilder sb = new StringBuilder("(size ").append(remainder ? ">= " : "== ").append(length);
+            for (int i = 0; i < length; i++) {
+                if (isLiteral(pattern[i])) {
+                    sb.append(" && ").append(constants.get(pattern[i]))
+                            .append(".equals(path.getElement(").append(i).append("))");
+                }
+            }
+            return sb.append(')').toString();
+        }
+    }
+}
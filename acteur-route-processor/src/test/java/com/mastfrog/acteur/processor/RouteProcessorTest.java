@@ -0,0 +1,158 @@
+/* 
+ * The MIT License
+ *
+ * Copyright 2013 Tim Boudreau.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.mastfrog.acteur.processor;
+
+import com.google.inject.AbstractModule;
+import com.google.inject.Guice;
+import com.google.inject.Injector;
+import com.google.inject.Key;
+import com.google.inject.Module;
+import com.google.inject.TypeLiteral;
+import com.google.inject.name.Names;
+import com.mastfrog.acteur.CompiledRoutes;
+import com.mastfrog.url.Path;
+import java.io.File;
+import java.net.URI;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import javax.tools.Diagnostic;
+import javax.tools.DiagnosticCollector;
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileObject;
+import javax.tools.SimpleJavaFileObject;
+import javax.tools.ToolProvider;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author Tim Boudreau
+ */
+public class RouteProcessorTest {
+
+    private static final String PAGES = "package com.foo;\n"
+            + "import com.mastfrog.acteur.Page;\n"
+            + "import com.mastfrog.acteur.Route;\n"
+            + "import com.mastfrog.acteur.util.Method;\n"
+            + "public class Pages {\n"
+            + "    @Route(methods = Method.GET, path = \"users/{id}\")\n"
+            + "    public static class Users extends Page {}\n"
+            + "    @Route(path = {\"users/*/items/{item:int}\", \"items/**\"})\n"
+            + "    public static class Items extends Page {}\n"
+            + "    @Route(minimumPathLength = 3, maximumPathLength = 4)\n"
+            + "    static class Deep extends Page {}\n"
+            + "    @Route(methods = Method.PUT)\n"
+            + "    public static class Puts extends Page {}\n"
+            + "}\n";
+
+    @Test
+    public void testGeneratedRoutes() throws Exception {
+        File dir = Files.createTempDirectory("routes").toFile();
+        List<Diagnostic<? extends JavaFileObject>> diagnostics = compile(dir, PAGES);
+        assertTrue(diagnostics.toString(), diagnostics.isEmpty());
+        assertTrue(new File(dir, "com/foo/GeneratedRoutesModule.class").exists());
+        try (URLClassLoader loader = new URLClassLoader(new URL[]{dir.toURI().toURL()}, getClass().getClassLoader())) {
+            final CompiledRoutes routes = (CompiledRoutes) loader.loadClass("com.foo.GeneratedRoutes").newInstance();
+            assertEquals(4, routes.types().size());
+            assertEquals("com.foo.Pages$Users", routes.types().get(0).getName());
+            assertEquals(Arrays.asList(0, 3), match(routes, "users/1234"));
+            assertEquals(Arrays.asList(1, 2, 3), match(routes, "users/1234/items/5"));
+            assertEquals(Arrays.asList(1, 3), match(routes, "items"));
+            assertEquals(Arrays.asList(1, 2, 3), match(routes, "items/a/b"));
+            assertEquals(Arrays.asList(3), match(routes, "users"));
+            assertEquals(Arrays.asList(3), match(routes, "a/b/c/d/e"));
+
+            // Installable alongside the module of another package of pages
+            Module module = (Module) loader.loadClass("com.foo.GeneratedRoutesModule").newInstance();
+            Module other = new AbstractModule() {
+                @Override
+                protected void configure() {
+                    bind(CompiledRoutes.class).annotatedWith(Names.named("com.bar")).toInstance(routes);
+                }
+            };
+            Injector injector = Guice.createInjector(module, other);
+            assertEquals(2, injector.findBindingsByType(TypeLiteral.get(CompiledRoutes.class)).size());
+            assertNotNull(injector.getInstance(Key.get(CompiledRoutes.class, Names.named("com.foo"))));
+        }
+    }
+
+    @Test
+    public void testBadRoutesAreCompileErrors() throws Exception {
+        File dir = Files.createTempDirectory("routes").toFile();
+        List<Diagnostic<? extends JavaFileObject>> diagnostics = compile(dir, "package com.foo;\n"
+                + "import com.mastfrog.acteur.Page;\n"
+                + "import com.mastfrog.acteur.Route;\n"
+                + "public class Pages {\n"
+                + "    @Route(path = \"a/**/b\")\n"
+                + "    public static class Bad extends Page {}\n"
+                + "    @Route(methodNotAllowed = true)\n"
+                + "    public static class AlsoBad extends Page {}\n"
+                + "    @Route(path = \"a\")\n"
+                + "    public static class NotAPage {}\n"
+                + "}\n");
+        assertEquals(diagnostics.toString(), 3, diagnostics.size());
+        for (Diagnostic<? extends JavaFileObject> d : diagnostics) {
+            assertEquals(Diagnostic.Kind.ERROR, d.getKind());
+        }
+        assertFalse(new File(dir, "com/foo/GeneratedRoutes.class").exists());
+    }
+
+    private static List<Integer> match(CompiledRoutes routes, String path) {
+        BitSet set = new BitSet();
+        routes.match(Path.parse(path), set);
+        List<Integer> result = new ArrayList<>();
+        for (int ix = set.nextSetBit(0); ix >= 0; ix = set.nextSetBit(ix + 1)) {
+            result.add(ix);
+        }
+        return result;
+    }
+
+    private static List<Diagnostic<? extends JavaFileObject>> compile(File dir, final String source) {
+        JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+        DiagnosticCollector<JavaFileObject> diagnostics = new DiagnosticCollector<>();
+        JavaFileObject file = new SimpleJavaFileObject(URI.create("string:///com/foo/Pages.java"), JavaFileObject.Kind.SOURCE) {
+            @Override
+            public CharSequence getCharContent(boolean ignoreEncodingErrors) {
+                return source;
+            }
+        };
+        JavaCompiler.CompilationTask task = compiler.getTask(null, null, diagnostics,
+                Arrays.asList("-d", dir.getPath(), "-classpath", System.getProperty("java.class.path")),
+                null, Arrays.asList(file));
+        task.setProcessors(Arrays.asList(new RouteProcessor()));
+        task.call();
+        List<Diagnostic<? extends JavaFileObject>> result = new ArrayList<>();
+        for (Diagnostic<? extends JavaFileObject> d : diagnostics.getDiagnostics()) {
+            if (d.getKind() != Diagnostic.Kind.NOTE) {
+                result.add(d);
+            }
+        }
+        return result;
+    }
+}
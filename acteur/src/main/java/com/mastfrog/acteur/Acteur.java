@@ -24,7 +24,9 @@
 package com.mastfrog.acteur;
 
 import com.mastfrog.acteur.util.HeaderValueType;
+import com.mastfrog.acteur.util.Headers;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.util.concurrent.ListenableFuture;
 import com.mastfrog.giulius.Dependencies;
 import com.mastfrog.guicy.scope.ReentrantScope;
 import com.mastfrog.util.Checks;
@@ -41,6 +43,7 @@ import io.netty.handler.codec.http.HttpResponseStatus;
 import java.io.IOException;
 import java.util.Map;
 import java.util.concurrent.atomic.AtomicReference;
+import org.joda.time.Duration;
 
 /**
  * A single piece of logic which can 
@@ -79,6 +82,11 @@ public abstract class Acteur {
 
     private State state;
     Throwable creationStackTrace;
+    /**
+     * True if this instance belongs to a {@link SharedPage} and is called
+     * concurrently on behalf of many requests.
+     */
+    volatile boolean shared;
 
     /**
      * Create an acteur.
@@ -87,20 +95,63 @@ public abstract class Acteur {
      * action asynchronously
      */
     protected Acteur() {
-        boolean asserts = false;
-        assert asserts = true;
-        if (asserts) {
+        // Recording where each acteur was created helps find the one which
+        // returned a null state, but costs a stack trace per acteur per
+        // request, so it is only done if assertions are on or the
+        // application's settings ask
+        if (ASSERTIONS || captureStacks) {
             creationStackTrace = new Throwable();
         }
     }
 
+    private static final boolean ASSERTIONS;
+    private static volatile boolean captureStacks;
+
+    static {
+        boolean asserts = false;
+        assert asserts = true;
+        ASSERTIONS = asserts;
+    }
+
+    /**
+     * Set whether acteurs record the stack they were created with, from
+     * {@link Application#CAPTURE_ACTEUR_STACKS_SETTINGS_KEY}.  Held
+     * statically, since acteurs a page constructor creates are created
+     * before anything tells them which application they belong to.
+     */
+    static void setCaptureStacks(boolean capture) {
+        captureStacks = capture;
+    }
+
+    static boolean isCapturingStacks() {
+        return ASSERTIONS || captureStacks;
+    }
+
     private volatile ResponseImpl response;
 
+    /**
+     * Called when the page this acteur belongs to is shared.  Headers set
+     * by the constructor are frozen with the page's ResponseHeaders, and
+     * are copied into the response of each request this acteur runs for.
+     */
+    void share() {
+        ResponseImpl own = response;
+        if (own != null) {
+            own.freeze();
+        }
+        shared = true;
+    }
+
     protected <T> void add(HeaderValueType<T> decorator, T value) {
         getResponse().add(decorator, value);
     }
 
     ResponseImpl getResponse() {
+        // Within a running chain, write straight into the chain's response
+        ResponseImpl current = ResponseImpl.current();
+        if (current != null) {
+            return current;
+        }
         if (response == null) {
             synchronized(this) {
                 if (response == null) {
@@ -111,6 +162,15 @@ public abstract class Acteur {
         return response;
     }
 
+    /**
+     * The response this acteur wrote into while not running in a chain -
+     * typically from a constructor called when its page was created - if
+     * any.
+     */
+    ResponseImpl ownResponse() {
+        return response;
+    }
+
     protected <T> T get(HeaderValueType<T> header) {
         return getResponse().get(header);
     }
@@ -139,6 +199,14 @@ public abstract class Acteur {
     static Acteur error(Page page, Throwable t) {
         return new ErrorActeur(page, t);
     }
+
+    static Acteur timedOut(Page page) {
+        return new TimedOutActeur(page);
+    }
+
+    static Acteur overloaded(Page page, int status, int retryAfterSeconds) {
+        return new OverloadedActeur(page, status, retryAfterSeconds);
+    }
     
     public void describeYourself(Map<String, Object> into) {
         
@@ -156,6 +224,22 @@ public abstract class Acteur {
         }
     }
     
+    private static final class TimedOutActeur extends Acteur {
+        TimedOutActeur(Page page) {
+            setState(new RespondWith(HttpResponseStatus.SERVICE_UNAVAILABLE,
+                    "Deadline for " + page.getClass().getSimpleName() + " exceeded\n"));
+        }
+    }
+
+    private static final class OverloadedActeur extends Acteur {
+        OverloadedActeur(Page page, int status, int retryAfterSeconds) {
+            if (retryAfterSeconds > 0) {
+                add(Headers.RETRY_AFTER_DURATION, Duration.standardSeconds(retryAfterSeconds));
+            }
+            setState(new RespondWith(status, page.getClass().getSimpleName() + " is busy\n"));
+        }
+    }
+
     public class RespondWith extends State {
 
         private final Page page;
@@ -179,10 +263,10 @@ public abstract class Acteur {
          */
         public RespondWith(HttpResponseStatus status, Object msg) {
             page = Page.get();
-            ObjectMapper mapper = page.getApplication().getDependencies().getInstance(ObjectMapper.class);
             try {
-                String m = msg instanceof String? msg.toString() : msg != null ?
-                        mapper.writeValueAsString(msg) : null;
+                // Only look up the mapper if there is something to serialize
+                String m = msg instanceof String ? msg.toString() : msg != null
+                        ? page.getApplication().getDependencies().getInstance(ObjectMapper.class).writeValueAsString(msg) : null;
                 setResponseCode(status);
                 if (m != null) {
                     setMessage(m);
@@ -344,6 +428,55 @@ public abstract class Acteur {
         }
     }
 
+    /**
+     * State for an acteur which has started some slow work, such as a
+     * database query or a call to another server, and does not want to hold
+     * a thread while waiting for it.  The chain resumes with the next acteur
+     * when the future completes, with its result, if non-null, available for
+     * injection as with the context of a {@link ConsumedLockedState}.  If the
+     * future fails, the failure is the response.  Like ConsumedLockedState,
+     * it commits the request to this page.
+     */
+    protected class DeferredState extends State {
+
+        private final Page page;
+        private final ListenableFuture<?> future;
+
+        public DeferredState(ListenableFuture<?> future) {
+            Checks.notNull("future", future);
+            page = Page.get();
+            if (page == null) {
+                throw new IllegalStateException("Called outside ActionsImpl.onEvent");
+            }
+            this.future = future;
+        }
+
+        @Override
+        ListenableFuture<?> getDeferred() {
+            return future;
+        }
+
+        @Override
+        protected boolean isLockedInChain() {
+            return true;
+        }
+
+        @Override
+        protected boolean isConsumed() {
+            return true;
+        }
+
+        @Override
+        protected Page getLockedPage() {
+            return page;
+        }
+
+        @Override
+        protected Acteur getActeur() {
+            return Acteur.this;
+        }
+    }
+
     protected final <T extends ChannelFutureListener>void setResponseBodyWriter(final Class<T> type) {
         final Page page = Page.get();
         final Dependencies deps = page.getApplication().getDependencies();
@@ -463,22 +596,45 @@ public abstract class Acteur {
             
             Acteur delegate() {
                 if (acteur == null) {
+                    acteur = create();
+                }
+                return acteur;
+            }
+
+            private Acteur create() {
+                Acteur result;
+                try {
+                    Page page = Page.get();
+                    result = page == null || page.getApplication() == null
+                            ? deps.getInstance(type)
+                            : page.getApplication().provider(type).get();
+                } catch (Exception e) {
                     try {
-                        acteur = deps.getInstance(type);
-                    } catch (Exception e) {
-                        try {
-                            onError(e);
-                            deps.getInstance(Application.class).onError(e);
-                        } catch (UnsupportedEncodingException ex) {
-                            Exceptions.chuck(ex);
-                        }
+                        onError(e);
+                    } catch (UnsupportedEncodingException ex) {
+                        Exceptions.chuck(ex);
                     }
+                    // The chain reports it and responds with an error
+                    throw new IllegalStateException("Could not create "
+                            + type.getName() + " for " + Page.get(), e);
                 }
-                return acteur;
+                if (result == null) {
+                    throw new IllegalStateException("Got null creating "
+                            + type.getName() + " for " + Page.get());
+                }
+                return result;
             }
 
             @Override
             public State getState() {
+                if (shared) {
+                    // Called concurrently for many requests, so nothing
+                    // can be cached - use a new delegate every time
+                    Acteur a = create();
+                    State result = a.getState();
+                    getResponse().merge(a.getResponse());
+                    return result;
+                }
                 return cachedState == null ? cachedState = delegate().getState() : cachedState;
             }
 
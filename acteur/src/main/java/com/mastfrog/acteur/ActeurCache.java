@@ -0,0 +1,155 @@
+/* 
+ * The MIT License
+ *
+ * Copyright 2013 Tim Boudreau.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.mastfrog.acteur;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import com.google.inject.Singleton;
+import com.mastfrog.url.PathElement;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Holds the contexts remembered for {@link Memoized &#064;Memoized} Acteurs,
+ * one bounded cache per Acteur class, and their statistics.
+ *
+ * @author Tim Boudreau
+ */
+@Singleton
+public final class ActeurCache {
+
+    private static final ClassValue<Memoized> ANNOTATIONS = new ClassValue<Memoized>() {
+        @Override
+        protected Memoized computeValue(Class<?> type) {
+            return type.getAnnotation(Memoized.class);
+        }
+    };
+    private final ConcurrentMap<Class<?>, Cache<String, Object[]>> caches
+            = new ConcurrentHashMap<>();
+
+    /**
+     * Get the statistics for one Acteur class - hits, misses, evictions and
+     * so forth.
+     *
+     * @param type An Acteur class
+     * @return The statistics, or null if it is not memoized or has not run
+     */
+    public CacheStats getStats(Class<? extends Acteur> type) {
+        Cache<String, Object[]> cache = caches.get(type);
+        return cache == null ? null : cache.stats();
+    }
+
+    /**
+     * Get the statistics for all memoized Acteurs which have run.
+     *
+     * @return A map of Acteur class to statistics
+     */
+    public Map<Class<?>, CacheStats> getAllStats() {
+        Map<Class<?>, CacheStats> result = new HashMap<>();
+        for (Map.Entry<Class<?>, Cache<String, Object[]>> e : caches.entrySet()) {
+            result.put(e.getKey(), e.getValue().stats());
+        }
+        return result;
+    }
+
+    /**
+     * Get the statistics of all memoized Acteurs added together.
+     *
+     * @return The statistics
+     */
+    public CacheStats getTotalStats() {
+        CacheStats result = new CacheStats(0, 0, 0, 0, 0, 0);
+        for (Cache<String, Object[]> cache : caches.values()) {
+            result = result.plus(cache.stats());
+        }
+        return result;
+    }
+
+    /**
+     * Discard all remembered contexts.
+     */
+    public void invalidateAll() {
+        for (Cache<String, Object[]> cache : caches.values()) {
+            cache.invalidateAll();
+        }
+    }
+
+    /**
+     * Compute the key for an Acteur class and request, or null if the class
+     * is not memoized.
+     */
+    static String key(Class<?> type, Event event) {
+        Memoized m = ANNOTATIONS.get(type);
+        if (m == null) {
+            return null;
+        }
+        StringBuilder sb = new StringBuilder();
+        if (m.pathElements().length > 0) {
+            PathElement[] elements = event.getPath().getElements();
+            for (int ix : m.pathElements()) {
+                sb.append('/').append(ix < elements.length ? elements[ix].toString() : "");
+            }
+        }
+        for (String p : m.parameters()) {
+            sb.append('\n').append(p).append('=').append(event.getParameter(p));
+        }
+        for (String h : m.headers()) {
+            sb.append('\n').append(h).append(": ").append(event.getHeader(h));
+        }
+        return sb.toString();
+    }
+
+    Object[] get(Class<?> type, String key) {
+        return cache(type).getIfPresent(key);
+    }
+
+    void put(Class<?> type, String key, Object[] context) {
+        cache(type).put(key, context.clone());
+    }
+
+    private Cache<String, Object[]> cache(Class<?> type) {
+        Cache<String, Object[]> result = caches.get(type);
+        if (result == null) {
+            Memoized m = ANNOTATIONS.get(type);
+            result = CacheBuilder.newBuilder()
+                    .maximumSize(m.maximumSize())
+                    .expireAfterWrite(m.ttl(), TimeUnit.MILLISECONDS)
+                    .recordStats().build();
+            Cache<String, Object[]> old = caches.putIfAbsent(type, result);
+            if (old != null) {
+                result = old;
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        return "ActeurCache{" + getTotalStats() + '}';
+    }
+}
@@ -32,16 +32,16 @@ import com.mastfrog.acteur.util.Method;
 import com.mastfrog.util.Checks;
 import com.mastfrog.util.Exceptions;
 import com.mastfrog.util.Strings;
+import com.mastfrog.url.Path;
 import io.netty.handler.codec.http.HttpResponseStatus;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.PrintStream;
 import java.util.Arrays;
+import java.util.List;
 import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
 import java.util.logging.Level;
 import java.util.logging.Logger;
-import java.util.regex.Pattern;
 import org.joda.time.DateTime;
 
 /**
@@ -96,48 +96,115 @@ public class ActeurFactory {
     }
 
     private Acteur matchMethods(final boolean notSupp, final String typeName, final Method... methods) {
-        class MatchMethods extends Acteur {
+        return new MatchMethods(deps, notSupp, typeName, methods);
+    }
 
-            @Override
-            public State getState() {
-                Event event = deps.getInstance(Event.class);
-                boolean hasMethod = Arrays.asList(methods).contains(event.getMethod());
-                add(Headers.ALLOW, methods);
-                if (notSupp && !hasMethod) {
-                    add(Headers.CONTENT_TYPE, MediaType.PLAIN_TEXT_UTF_8);
-                    return new RespondWith(HttpResponseStatus.METHOD_NOT_ALLOWED, "405 Method "
-                            + event.getMethod() + " not allowed.  Accepted methods are "
-                            + Headers.ALLOW.toString(methods) + " " + typeName + "\n");
+    /**
+     * The acteur created by matchMethods(), which the application's route
+     * table looks for at the head of a page, so that the page need not be
+     * instantiated at all for requests using other methods.
+     */
+    @NonBlocking
+    static final class MatchMethods extends Acteur {
+
+        private final Dependencies deps;
+        private final boolean notSupp;
+        private final String typeName;
+        private final Method[] methods;
+        private final PredicateMemo.Test<Boolean> hasMethod;
+
+        MatchMethods(Dependencies deps, boolean notSupp, String typeName, final Method... methods) {
+            this.deps = deps;
+            this.notSupp = notSupp;
+            this.typeName = typeName;
+            this.methods = methods;
+            hasMethod = new PredicateMemo.Test<Boolean>("matchMethods", (Object[]) methods) {
+                @Override
+                protected Boolean test(Event event) {
+                    return Arrays.asList(methods).contains(event.getMethod());
                 }
-                return hasMethod ? new ConsumedState() : new RejectedState();
-            }
+            };
+        }
 
-            @Override
-            public String toString() {
-                return "Match Methods " + Arrays.asList(methods);
+        Method[] methods() {
+            return methods.clone();
+        }
+
+        boolean isNotSupp() {
+            return notSupp;
+        }
+
+        /**
+         * Find the MatchMethods which decides whether a page can respond to
+         * a given method - one which is preceded only by acteurs which may
+         * reject but never respond to a request, and which itself does not
+         * respond with 405 unless it is the very first acteur.
+         *
+         * @param page A page
+         * @return A MatchMethods or null
+         */
+        static MatchMethods find(Page page) {
+            List<Object> acteurs = page.getActeurs();
+            for (int i = 0; i < acteurs.size(); i++) {
+                Object o = acteurs.get(i);
+                if (o instanceof MatchMethods) {
+                    MatchMethods result = (MatchMethods) o;
+                    return result.notSupp && i > 0 ? null : result;
+                } else if (!(o instanceof PredicateActeur)) {
+                    break;
+                }
             }
+            return null;
+        }
 
-            @Override
-            public void describeYourself(Map<String, Object> into) {
-                into.put ("Methods", methods);
+        @Override
+        public State getState() {
+            boolean hasMethod = this.hasMethod.get(deps);
+            add(Headers.ALLOW, methods);
+            if (notSupp && !hasMethod) {
+                Event event = deps.getInstance(Event.class);
+                add(Headers.CONTENT_TYPE, MediaType.PLAIN_TEXT_UTF_8);
+                return new RespondWith(HttpResponseStatus.METHOD_NOT_ALLOWED, "405 Method "
+                        + event.getMethod() + " not allowed.  Accepted methods are "
+                        + Headers.ALLOW.toString(methods) + " " + typeName + "\n");
             }
+            return hasMethod ? State.CONTINUE : State.REJECTED;
+        }
+
+        @Override
+        public String toString() {
+            return "Match Methods " + Arrays.asList(methods);
+        }
+
+        @Override
+        public void describeYourself(Map<String, Object> into) {
+            into.put ("Methods", methods);
         }
-        return new MatchMethods();
     }
 
     public Acteur exactPathLength(final int length) {
         Checks.nonNegative("length", length);
-        return new Acteur() {
+        final PredicateMemo.Test<Boolean> test = new PredicateMemo.Test<Boolean>("exactPathLength", length) {
+            @Override
+            protected Boolean test(Event event) {
+                return event.getPath().size() == length;
+            }
+        };
+        return new PredicateActeur() {
             @Override
             public State getState() {
-                Event event = deps.getInstance(Event.class);
-                if (event.getPath().getElements().length == length) {
-                    return new Acteur.RejectedState();
+                if (test.get(deps)) {
+                    return State.REJECTED;
                 } else {
-                    return new Acteur.ConsumedState();
+                    return State.CONTINUE;
                 }
             }
 
+            @Override
+            boolean isRouteOnly() {
+                return true;
+            }
+
             @Override
             public void describeYourself(Map<String, Object> into) {
                 into.put("Path-element-count", length);
@@ -148,17 +215,27 @@ public class ActeurFactory {
     public Acteur minimumPathLength(final int length) {
         Checks.nonZero("length", length);
         Checks.nonNegative("length", length);
-        return new Acteur() {
+        final PredicateMemo.Test<Boolean> test = new PredicateMemo.Test<Boolean>("minimumPathLength", length) {
+            @Override
+            protected Boolean test(Event event) {
+                return event.getPath().size() < length;
+            }
+        };
+        return new PredicateActeur() {
             @Override
             public State getState() {
-                Event event = deps.getInstance(Event.class);
-                if (event.getPath().getElements().length < length) {
-                    return new RejectedState();
+                if (test.get(deps)) {
+                    return State.REJECTED;
                 } else {
-                    return new ConsumedState();
+                    return State.CONTINUE;
                 }
             }
 
+            @Override
+            boolean isRouteOnly() {
+                return true;
+            }
+
             @Override
             public void describeYourself(Map<String, Object> into) {
                 into.put("Minimum Path Length", length);
@@ -169,17 +246,27 @@ public class ActeurFactory {
     public Acteur maximumPathLength(final int length) {
         Checks.nonZero("length", length);
         Checks.nonNegative("length", length);
-        return new Acteur() {
+        final PredicateMemo.Test<Boolean> test = new PredicateMemo.Test<Boolean>("maximumPathLength", length) {
+            @Override
+            protected Boolean test(Event event) {
+                return event.getPath().size() > length;
+            }
+        };
+        return new PredicateActeur() {
             @Override
             public State getState() {
-                Event event = deps.getInstance(Event.class);
-                if (event.getPath().getElements().length > length) {
-                    return new Acteur.RejectedState();
+                if (test.get(deps)) {
+                    return State.REJECTED;
                 } else {
-                    return new Acteur.ConsumedState();
+                    return State.CONTINUE;
                 }
             }
 
+            @Override
+            boolean isRouteOnly() {
+                return true;
+            }
+
             @Override
             public void describeYourself(Map<String, Object> into) {
                 into.put("Maximum Path Length", length);
@@ -248,7 +335,7 @@ public class ActeurFactory {
                 if (obj != null) {
                     return new ConsumedLockedState(obj);
                 }
-                return new RejectedState();
+                return State.REJECTED;
             }
         }
         return new InjectParams();
@@ -281,19 +368,28 @@ public class ActeurFactory {
      * @return An acteur
      */
     public Acteur requireParameters(final String... names) {
+        // Finds the first missing parameter, if any
+        final PredicateMemo.Test<String> missing = new PredicateMemo.Test<String>("requireParameters", (Object[]) names) {
+            @Override
+            protected String test(Event event) {
+                for (String nm : names) {
+                    if (event.getParameter(nm) == null) {
+                        return nm;
+                    }
+                }
+                return null;
+            }
+        };
         class RequireParameters extends Acteur {
 
             @Override
             public State getState() {
-                Event event = deps.getInstance(Event.class);
-                for (String nm : names) {
-                    String val = event.getParameter(nm);
-                    if (val == null) {
-                        add(Headers.CONTENT_TYPE, MediaType.PLAIN_TEXT_UTF_8);
-                        return new RespondWith(HttpResponseStatus.BAD_REQUEST, "Missing URL parameter '" + nm + "'\n");
-                    }
+                String nm = missing.get(deps);
+                if (nm != null) {
+                    add(Headers.CONTENT_TYPE, MediaType.PLAIN_TEXT_UTF_8);
+                    return new RespondWith(HttpResponseStatus.BAD_REQUEST, "Missing URL parameter '" + nm + "'\n");
                 }
-                return new ConsumedState();
+                return State.CONTINUE;
             }
 
             @Override
@@ -329,7 +425,7 @@ public class ActeurFactory {
                         }
                     }
                 }
-                return new Acteur.ConsumedState();
+                return State.CONTINUE;
             }
 
             @Override
@@ -390,7 +486,7 @@ public class ActeurFactory {
                         }
                     }
                 }
-                return new Acteur.ConsumedState();
+                return State.CONTINUE;
             }
         }
         return new NumberParameters();
@@ -404,17 +500,27 @@ public class ActeurFactory {
      */
     public Acteur banParameters(final String... names) {
         Arrays.sort(names);
-        class BanParameters extends Acteur {
-
-            public State getState() {
-                Event evt = deps.getInstance(Event.class);
+        // Finds the first banned parameter, if any
+        final PredicateMemo.Test<String> banned = new PredicateMemo.Test<String>("banParameters", (Object[]) names) {
+            @Override
+            protected String test(Event evt) {
                 for (Map.Entry<String, String> e : evt.getParametersAsMap().entrySet()) {
                     if (Arrays.binarySearch(names, e.getKey()) >= 0) {
-                        return new RespondWith(HttpResponseStatus.BAD_REQUEST,
-                                e.getKey() + " not allowed in parameters\n");
+                        return e.getKey();
                     }
                 }
-                return new ConsumedState();
+                return null;
+            }
+        };
+        class BanParameters extends Acteur {
+
+            public State getState() {
+                String name = banned.get(deps);
+                if (name != null) {
+                    return new RespondWith(HttpResponseStatus.BAD_REQUEST,
+                            name + " not allowed in parameters\n");
+                }
+                return State.CONTINUE;
             }
 
             @Override
@@ -432,16 +538,23 @@ public class ActeurFactory {
      * @return
      */
     public Acteur requireAtLeastOneParameter(final String... names) {
+        final PredicateMemo.Test<Boolean> anyPresent = new PredicateMemo.Test<Boolean>("requireAtLeastOneParameter", (Object[]) names) {
+            @Override
+            protected Boolean test(Event event) {
+                for (String nm : names) {
+                    if (event.getParameter(nm) != null) {
+                        return true;
+                    }
+                }
+                return false;
+            }
+        };
         class RequireAtLeastOneParameter extends Acteur {
 
             @Override
             public State getState() {
-                Event event = deps.getInstance(Event.class);
-                for (String nm : names) {
-                    String val = event.getParameter(nm);
-                    if (val != null) {
-                        return new ConsumedState();
-                    }
+                if (anyPresent.get(deps)) {
+                    return State.CONTINUE;
                 }
                 StringBuilder sb = new StringBuilder();
                 for (int i = 0; i < names.length; i++) {
@@ -465,38 +578,36 @@ public class ActeurFactory {
         }
         return new RequireAtLeastOneParameter();
     }
-    private static Map<String, Pattern> patternCache = new ConcurrentHashMap<>();
-
-    private static Pattern getPattern(String regex) {
-        Pattern result = patternCache.get(regex);
-        if (result == null) {
-            result = Pattern.compile(regex);
-            patternCache.put(regex, result);
-        }
-        return result;
-    }
 
     /**
      * Reject the request if Event.getPath().toString() does not match one of
-     * the passed regular expressions
+     * the passed regular expressions.  The expressions are combined into
+     * a single one, so the path is only tested once however many are passed.
      *
      * @param regexen Regexen
      * @return An acteur
      */
     public Acteur matchPath(final String... regexen) {
-        class MatchPath extends Acteur {
+        final RegexUnion union = RegexUnion.get(regexen);
+        final PredicateMemo.Test<Boolean> matches = new PredicateMemo.Test<Boolean>("matchPath", (Object[]) regexen) {
+            @Override
+            protected Boolean test(Event event) {
+                return union.indexOf(event.getPath().toString()) >= 0;
+            }
+        };
+        class MatchPath extends PredicateActeur {
 
             @Override
             public State getState() {
-                Event event = deps.getInstance(Event.class);
-                for (String regex : regexen) {
-                    Pattern p = getPattern(regex);
-                    boolean matches = p.matcher(event.getPath().toString()).matches();
-                    if (matches) {
-                        return new ConsumedState();
-                    }
+                if (matches.get(deps)) {
+                    return State.CONTINUE;
                 }
-                return new RejectedState();
+                return State.REJECTED;
+            }
+
+            @Override
+            boolean isRouteOnly() {
+                return true;
             }
 
             @Override
@@ -512,6 +623,66 @@ public class ActeurFactory {
         return new MatchPath();
     }
 
+    /**
+     * Reject the request if its path does not match one of the passed
+     * segment patterns, such as <code>users/*&#47;items/{id:long}</code>.
+     * Unlike {@link #matchPath(java.lang.String...)}, no regular expressions
+     * are involved - path elements are compared directly.  A pattern element
+     * may be a literal, <code>*</code> to match any element,
+     * <code>{name}</code>, <code>{name:int}</code> or <code>{name:long}</code>
+     * to match and capture an element, or, as the last element,
+     * <code>**</code> to match any remaining elements.  The captures of the
+     * first matching pattern are available to later Acteurs as an injectable
+     * {@link PathCaptures}.
+     *
+     * @param patterns Patterns
+     * @return An acteur
+     */
+    public Acteur matchPathPattern(final String... patterns) {
+        Checks.notNull("patterns", patterns);
+        final PathPattern[] compiled = new PathPattern[patterns.length];
+        for (int i = 0; i < patterns.length; i++) {
+            compiled[i] = PathPattern.compile(patterns[i]);
+        }
+        final PredicateMemo.Test<PathCaptures> match = new PredicateMemo.Test<PathCaptures>("matchPathPattern", (Object[]) patterns) {
+            @Override
+            protected PathCaptures test(Event event) {
+                Path path = event.getPath();
+                for (PathPattern pattern : compiled) {
+                    PathCaptures captures = pattern.match(path);
+                    if (captures != null) {
+                        return captures;
+                    }
+                }
+                return null;
+            }
+        };
+        class MatchPathPattern extends PredicateActeur {
+
+            @Override
+            public State getState() {
+                PathCaptures captures = match.get(deps);
+                return captures == null ? State.REJECTED : new ConsumedState(captures);
+            }
+
+            @Override
+            boolean isRouteOnly() {
+                return true;
+            }
+
+            @Override
+            public void describeYourself(Map<String, Object> into) {
+                into.put("URL Patterns", patterns);
+            }
+
+            @Override
+            public String toString() {
+                return "Match path pattern " + Arrays.asList(patterns);
+            }
+        }
+        return new MatchPathPattern();
+    }
+
     /**
      * Checks the IF_NONE_MATCH header and compares it with the value from the
      * current Page's getETag() method. If it matches, forces a NOT_MODIFIED
@@ -606,7 +777,7 @@ public class ActeurFactory {
                     return;
                 }
             }
-            setState(new ConsumedState());
+            setState(State.CONTINUE);
         }
 
         @Override
@@ -630,7 +801,7 @@ public class ActeurFactory {
                     }
                 }
             }
-            setState(new ConsumedState());
+            setState(State.CONTINUE);
         }
 
         @Override
@@ -657,7 +828,7 @@ public class ActeurFactory {
                 setState(new RespondWith(HttpResponseStatus.NOT_MODIFIED));
                 return;
             }
-            setState(new ConsumedState());
+            setState(State.CONTINUE);
         }
 
         @Override
@@ -679,8 +850,23 @@ public class ActeurFactory {
             @Override
             public State getState() {
                 Page page = deps.getInstance(Page.class);
+                if (page.getReponseHeaders().isFrozen()) {
+                    // A shared page's headers cannot hold a per-request
+                    // etag, so send it with this request's response instead
+                    String etag = getETag();
+                    if (etag != null) {
+                        add(Headers.ETAG, etag);
+                        Event event = deps.getInstance(Event.class);
+                        if (etag.equals(event.getHeader(Headers.IF_NONE_MATCH))) {
+                            return new RespondWith(HttpResponseStatus.NOT_MODIFIED);
+                        }
+                    }
+                    return State.CONTINUE;
+                }
                 page.getReponseHeaders().setETagProvider(this);
-                CheckIfNoneMatchHeader h = deps.getInstance(CheckIfNoneMatchHeader.class);
+                CheckIfNoneMatchHeader h = page.getApplication() == null
+                        ? deps.getInstance(CheckIfNoneMatchHeader.class)
+                        : page.getApplication().provider(CheckIfNoneMatchHeader.class).get();
                 State result = h.getState();
                 getResponse().merge(h.getResponse());
                 return result;
@@ -23,6 +23,7 @@
  */
 package com.mastfrog.acteur;
 
+import com.google.common.util.concurrent.Uninterruptibles;
 import com.mastfrog.acteur.util.Headers;
 import com.google.inject.Inject;
 import com.google.inject.name.Named;
@@ -188,6 +189,48 @@ public class ActeursImpl implements Acteurs {
         }
     }
 
+    /**
+     * Gives a canonical state the page and acteur it was returned by, which
+     * the finisher needs.
+     */
+    private static final class ChainState extends State {
+
+        private final State delegate;
+        private final Acteur acteur;
+        private final Page page;
+
+        ChainState(State delegate, Acteur acteur, Page page) {
+            this.delegate = delegate;
+            this.acteur = acteur;
+            this.page = page;
+        }
+
+        @Override
+        Object[] getContext() {
+            return delegate.getContext();
+        }
+
+        @Override
+        boolean isLockedInChain() {
+            return delegate.isLockedInChain();
+        }
+
+        @Override
+        boolean isConsumed() {
+            return delegate.isConsumed();
+        }
+
+        @Override
+        protected Page getLockedPage() {
+            return page;
+        }
+
+        @Override
+        protected Acteur getActeur() {
+            return acteur;
+        }
+    }
+
     private static final class ActeurCallable implements Callable<Object[]> {
 
         private final Page page;
@@ -208,7 +251,11 @@ public class ActeursImpl implements Acteurs {
         public Object[] call() throws Exception {
             // Set the Page ThreadLocal, for things that will call Page.get()
             Page.set(page);
+            // Acteurs write directly into this chain's response
+            ResponseImpl.setCurrent(response);
             try {
+                // Headers the acteur set before the chain started
+                response.merge(acteur.ownResponse());
                 // Get the state
                 State state = acteur.getState();
                 // Null is not permitted - broken Acteur implementation didn't
@@ -223,17 +270,20 @@ public class ActeursImpl implements Acteurs {
                     npe.printStackTrace();
                     throw npe;
                 }
+                if (state.getActeur() == null) {
+                    // A canonical state - attach this chain's page and acteur
+                    state = new ChainState(state, acteur, page);
+                }
                 // Set the atomic reference used by the finisher
                 lastState.set(state);
-                // Merge in the response, in case some headers were added
-                
                 boolean done = state.isRejected();
-//                if (!done || isLast) {
-                  response.merge(acteur.getResponse());
-//                }
-                
                 // If the state is rejected, return null - we're done processing
                 // in this Treadmill
+                if (!done && state.getDeferred() != null) {
+                    // Pages which run their own chain block until it is done
+                    Object result = Uninterruptibles.getUninterruptibly(state.getDeferred());
+                    return result == null ? new Object[0] : new Object[]{result};
+                }
                 return done ? null : state.getContext();
             } catch (ThreadDeath | OutOfMemoryError e) {
                 throw e;
@@ -242,12 +292,12 @@ public class ActeursImpl implements Acteurs {
 //                throw e;
                 State state = Acteur.error(page, e).getState();
                 lastState.set(state);
-                response.merge(acteur.getResponse());
                 page.getApplication().onError(e);
                 throw e;
             } finally {
                 // Clear the current page ThreadLocal
                 Page.clear();
+                ResponseImpl.setCurrent(null);
             }
         }
     }
@@ -0,0 +1,182 @@
+/* 
+ * The MIT License
+ *
+ * Copyright 2013 Tim Boudreau.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.mastfrog.acteur;
+
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import com.mastfrog.settings.Settings;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import org.joda.time.Duration;
+
+/**
+ * Limits how many requests may be running chains of acteurs at once, and
+ * answers the rest immediately with <i>503 Service Unavailable</i> and a
+ * <code>Retry-After</code> header rather than letting them queue.  The limit
+ * adapts AIMD-style to how long chains take, from when they are admitted to
+ * when they respond:  each one that finishes within the target latency
+ * raises it by 1/limit, so it grows by about one per limit's worth of
+ * requests, and finishing late cuts it by a fixed factor, at most once per
+ * target latency.
+ * <p/>
+ * Off unless the <code>acteur.admission</code> setting is true.
+ *
+ * @author Tim Boudreau
+ */
+@Singleton
+public final class AdmissionController {
+
+    public static final String ADMISSION_SETTINGS_KEY = "acteur.admission";
+    public static final String INITIAL_LIMIT_SETTINGS_KEY = "acteur.admission.initial.limit";
+    public static final String MIN_LIMIT_SETTINGS_KEY = "acteur.admission.min.limit";
+    public static final String MAX_LIMIT_SETTINGS_KEY = "acteur.admission.max.limit";
+    /**
+     * Milliseconds a chain may take before it counts as a sign of overload.
+     */
+    public static final String TARGET_LATENCY_SETTINGS_KEY = "acteur.admission.target.latency";
+    /**
+     * Seconds rejected clients are told to wait.
+     */
+    public static final String RETRY_AFTER_SETTINGS_KEY = "acteur.admission.retry.after";
+    // Fixed point, in thousandths, so it can be updated atomically
+    private static final int SCALE = 1000;
+    private static final double BACKOFF = 0.9;
+    private final boolean enabled;
+    private final long min;
+    private final long max;
+    private final long targetNanos;
+    private final Duration retryAfter;
+    private final AtomicLong limit;
+    private final AtomicLong lastDecrease = new AtomicLong();
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicLong admitted = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+
+    @Inject
+    AdmissionController(Settings settings) {
+        this(settings.getBoolean(ADMISSION_SETTINGS_KEY, false),
+                settings.getInt(INITIAL_LIMIT_SETTINGS_KEY, 64),
+                settings.getInt(MIN_LIMIT_SETTINGS_KEY, 8),
+                settings.getInt(MAX_LIMIT_SETTINGS_KEY, 1024),
+                settings.getLong(TARGET_LATENCY_SETTINGS_KEY, 500L),
+                settings.getInt(RETRY_AFTER_SETTINGS_KEY, 1));
+    }
+
+    AdmissionController(boolean enabled, int initial, int min, int max, long targetMillis, int retryAfterSeconds) {
+        this.enabled = enabled;
+        this.min = (long) Math.max(1, min) * SCALE;
+        this.max = (long) max * SCALE;
+        this.targetNanos = TimeUnit.MILLISECONDS.toNanos(targetMillis);
+        this.retryAfter = Duration.standardSeconds(retryAfterSeconds);
+        this.limit = new AtomicLong(Math.max(this.min, Math.min(this.max, (long) initial * SCALE)));
+        lastDecrease.set(System.nanoTime() - targetNanos);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Get the current concurrency limit.
+     *
+     * @return The limit
+     */
+    public int getLimit() {
+        return (int) (limit.get() / SCALE);
+    }
+
+    /**
+     * Get the number of requests currently admitted and not yet answered.
+     *
+     * @return A count
+     */
+    public int getInFlight() {
+        return inFlight.get();
+    }
+
+    public long getAdmitted() {
+        return admitted.get();
+    }
+
+    public long getRejected() {
+        return rejected.get();
+    }
+
+    Duration getRetryAfter() {
+        return retryAfter;
+    }
+
+    /**
+     * Admit a request if the limit allows it; if it returns true,
+     * release() must be called when the request is done.
+     *
+     * @return true if the request may proceed
+     */
+    boolean tryAcquire() {
+        if (inFlight.incrementAndGet() > getLimit()) {
+            inFlight.decrementAndGet();
+            rejected.incrementAndGet();
+            return false;
+        }
+        admitted.incrementAndGet();
+        return true;
+    }
+
+    /**
+     * Called when an admitted request is done.
+     *
+     * @param startNanos The System.nanoTime() it was admitted at
+     */
+    void release(long startNanos) {
+        inFlight.decrementAndGet();
+        long now = System.nanoTime();
+        if (now - startNanos > targetNanos) {
+            long last = lastDecrease.get();
+            // Once per target latency, so one slow burst is not counted as
+            // many signals
+            if (now - last >= targetNanos && lastDecrease.compareAndSet(last, now)) {
+                long current;
+                long next;
+                do {
+                    current = limit.get();
+                    next = Math.max(min, (long) (current * BACKOFF));
+                } while (!limit.compareAndSet(current, next));
+            }
+        } else {
+            long current;
+            long next;
+            do {
+                current = limit.get();
+                next = Math.min(max, current + (long) SCALE * SCALE / current);
+            } while (current != next && !limit.compareAndSet(current, next));
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "AdmissionController{limit=" + getLimit() + ", inFlight=" + inFlight
+                + ", admitted=" + admitted + ", rejected=" + rejected + '}';
+    }
+}
@@ -25,14 +25,19 @@ package com.mastfrog.acteur;
 
 import com.mastfrog.acteur.util.Headers;
 import com.google.common.net.MediaType;
+import com.google.inject.Binding;
 import com.google.inject.Inject;
+import com.google.inject.Provider;
+import com.google.inject.TypeLiteral;
 import com.google.inject.name.Named;
+import com.mastfrog.settings.Settings;
 import com.mastfrog.settings.SettingsBuilder;
 import com.mastfrog.giulius.Dependencies;
 import com.mastfrog.guicy.scope.ReentrantScope;
 import com.mastfrog.acteur.util.CacheControl;
 import com.mastfrog.acteur.util.CacheControlTypes;
 import com.mastfrog.acteur.server.ServerModule;
+import com.mastfrog.acteur.util.Method;
 import com.mastfrog.acteur.util.RequestID;
 import com.mastfrog.acteur.server.Server;
 import com.mastfrog.util.ConfigurationError;
@@ -52,6 +57,7 @@ import java.io.IOException;
 import java.lang.reflect.Constructor;
 import java.lang.reflect.Modifier;
 import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
@@ -60,9 +66,11 @@ import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutorService;
 import org.joda.time.DateTime;
+import org.joda.time.Duration;
 
 /**
  * Thing which aggregates a bunch of Pages, each of which aggregates a bunch of
@@ -86,6 +94,43 @@ public class Application implements Iterable<Page> {
     private Exception stackTrace = new Exception();
     @Inject
     private Pages runner;
+    private volatile RouteTable routes;
+    private final Map<Class<? extends Page>, Page> sharedPages = new ConcurrentHashMap<>();
+    private final Map<Class<? extends Page>, Page> methodNotAllowedPages = new ConcurrentHashMap<>();
+    private final Map<Class<?>, Provider<?>> providers = new ConcurrentHashMap<>();
+    /**
+     * Settings key for whether the methods a page without
+     * <code>&#064;Route(methods=...)</code> accepts should be inferred, when
+     * the route table is built, from a matchMethods() acteur at the head of
+     * the page;  off by default.  Each such page is created, outside of any
+     * request, to find it, so this is only correct if no page's acteurs vary
+     * per request - explicit methods on the page's {@link Route} are the
+     * reliable way to have it only tried for them.
+     */
+    public static final String INFER_METHODS_SETTINGS_KEY = "acteur.infer.methods";
+    /**
+     * Settings key for the maximum number of (method, path) pairs whose 404
+     * responses are cached;  0 disables the cache.
+     */
+    public static final String NOT_FOUND_CACHE_SIZE_SETTINGS_KEY = "acteur.404.cache.size";
+    /**
+     * Settings key for whether to cache all 404s, rather than only those for
+     * requests which no page's route matches, or which every page tried
+     * rejected using an acteur such as matchPath() or matchMethods() that
+     * examines nothing but the method and path.  Only safe if no page's
+     * decision to respond depends on anything but the method and path.
+     */
+    public static final String NOT_FOUND_CACHE_ALL_SETTINGS_KEY = "acteur.404.cache.all";
+    /**
+     * Settings key for whether each acteur records the stack it was created
+     * with, so that one which returns a null state can be found;  off by
+     * default, since it costs a stack trace per acteur per request.  Stacks
+     * are also recorded whenever assertions are enabled.
+     */
+    public static final String CAPTURE_ACTEUR_STACKS_SETTINGS_KEY = "acteur.debug.stacks";
+    private static final int DEFAULT_NOT_FOUND_CACHE_SIZE = 1024;
+    private volatile NotFoundCache notFoundCache;
+    private volatile boolean notFoundCacheInitialized;
 
     protected Application(Class<?>... types) {
         for (Class<?> type : types) {
@@ -144,7 +189,13 @@ public class Application implements Iterable<Page> {
             throw new ConfigurationError(page + " is not a subclass of " + Page.class.getName());
         }
         assert checkConstructor(page);
+        RouteTable.validate(page);
         pages.add(page);
+        routes = null;
+        NotFoundCache cache = notFoundCache;
+        if (cache != null) {
+            cache.invalidate();
+        }
     }
 
     static boolean checkConstructor(Class<?> type) {
@@ -191,7 +242,9 @@ public class Application implements Iterable<Page> {
     }
 
     /**
-     * Create a 404 response
+     * Create a 404 response.  Unless the not-found cache is disabled, the
+     * result is cached for the request's method and path, so this should not
+     * vary by anything else.
      * @param event
      * @return 
      */
@@ -210,6 +263,27 @@ public class Application implements Iterable<Page> {
         return resp;
     }
 
+    /**
+     * Create the response sent to requests turned away because the server
+     * is overloaded.
+     *
+     * @param event The request
+     * @param retryAfter How long the client should wait before retrying
+     * @return A response
+     */
+    protected HttpResponse createServiceUnavailableResponse(Event event, Duration retryAfter) {
+        ByteBuf buf = Unpooled.copiedBuffer("Server busy - retry in "
+                + retryAfter.getStandardSeconds() + " seconds\n", CharsetUtil.UTF_8);
+        DefaultFullHttpResponse resp = new DefaultFullHttpResponse(HttpVersion.HTTP_1_1,
+                HttpResponseStatus.SERVICE_UNAVAILABLE, buf);
+        Headers.write(Headers.CONTENT_TYPE, MediaType.PLAIN_TEXT_UTF_8, resp);
+        Headers.write(Headers.CONTENT_LENGTH, (long) buf.writerIndex(), resp);
+        Headers.write(Headers.RETRY_AFTER_DURATION, retryAfter, resp);
+        Headers.write(Headers.CACHE_CONTROL, new CacheControl(CacheControlTypes.no_cache), resp);
+        Headers.write(Headers.DATE, new DateTime(), resp);
+        return resp;
+    }
+
     protected void onBeforeRespond(RequestID id, Event event, HttpResponseStatus status) {
         logger.onRespond(id, event, status);
     }
@@ -233,15 +307,31 @@ public class Application implements Iterable<Page> {
      * @return 
      */
     public CountDownLatch onEvent(final Event event, final Channel channel) {
+        return onEvent(event, channel, false);
+    }
+
+    /**
+     * Process a request;  WarmUp's requests are not logged, and leave the
+     * 404 and acteur caches and the admission controller alone.
+     *
+     * @param warmUp Whether this is a synthetic request sent by WarmUp
+     */
+    CountDownLatch onEvent(final Event event, final Channel channel, final boolean warmUp) {
         //XXX get rid of channel param?
         // Create a new incremented id for this request
         final RequestID id = new RequestID();
+        // Build the route table, which may create pages, before entering
+        // the scope, so that nothing can be injected with this request
+        routes();
         // Enter request scope with the id and the event
         return scope.run(new Invokable<Event, CountDownLatch, RuntimeException>() {
             @Override
             public CountDownLatch run(Event argument) {
                 // Set the thread name
 //                Thread.currentThread().setName(event.getPath() + " " + event.getRemoteAddress());
+                if (warmUp && runner instanceof PagesImpl) {
+                    return ((PagesImpl) runner).onEvent(id, event, channel, true);
+                }
                 onBeforeEvent(id, event);
                 try {
                     return runner.onEvent(id, event, channel);
@@ -267,6 +357,142 @@ public class Application implements Iterable<Page> {
         return deps;
     }
 
+    /**
+     * Find the compiled routes bound by each module the route processor
+     * generated, which binds them under the name of its package.
+     */
+    private List<CompiledRoutes> compiledRoutes() {
+        List<CompiledRoutes> result = new ArrayList<>();
+        for (Binding<CompiledRoutes> b : getDependencies().getInjector()
+                .findBindingsByType(TypeLiteral.get(CompiledRoutes.class))) {
+            result.add(b.getProvider().get());
+        }
+        return result;
+    }
+
+    RouteTable routes() {
+        RouteTable result = routes;
+        if (result == null) {
+            synchronized (this) {
+                result = routes;
+                if (result == null) {
+                    routes = result = new RouteTable(pages, inferMethods(), compiledRoutes());
+                    resolveProviders();
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Get the Guice provider for a page or acteur type, looked up once, so
+     * creating one for each request skips finding its binding in the
+     * injector.  It is Guice's own provider, so injection, including of
+     * types bound in the request scope, is unchanged.
+     *
+     * @param type A type
+     * @return A provider
+     */
+    @SuppressWarnings("unchecked")
+    <T> Provider<T> provider(Class<T> type) {
+        Provider<T> result = (Provider<T>) providers.get(type);
+        if (result == null) {
+            result = getDependencies().getInjector().getProvider(type);
+            providers.put(type, result);
+        }
+        return result;
+    }
+
+    /**
+     * Resolve the provider for each page before the first request needs it.
+     * Pages are not constructed here, since that is only safe within a
+     * request;  the providers of the acteurs a page adds as classes are
+     * resolved the first time the page's getActeur() needs them.
+     */
+    private void resolveProviders() {
+        for (Class<? extends Page> type : pages) {
+            provider(type);
+        }
+    }
+
+    private Map<Class<? extends Page>, ActeurFactory.MatchMethods> inferMethods() {
+        Map<Class<? extends Page>, ActeurFactory.MatchMethods> result = new HashMap<>();
+        Settings settings = getDependencies().getInstance(Settings.class);
+        if (!settings.getBoolean(INFER_METHODS_SETTINGS_KEY, false)) {
+            return result;
+        }
+        for (Class<? extends Page> type : pages) {
+            Route route = type.getAnnotation(Route.class);
+            if (route != null && route.methods().length > 0) {
+                continue;
+            }
+            try {
+                Page page = instantiate(type, type.isAnnotationPresent(SharedPage.class));
+                ActeurFactory.MatchMethods mm = ActeurFactory.MatchMethods.find(page);
+                if (mm != null) {
+                    result.put(type, mm);
+                }
+            } catch (RuntimeException e) {
+                // Cannot be constructed outside a request - it will be
+                // tried for all methods
+            }
+        }
+        return result;
+    }
+
+    private Page methodNotAllowed(RouteTable table, int ix) {
+        Class<? extends Page> type = table.type(ix);
+        Page result = methodNotAllowedPages.get(type);
+        if (result == null) {
+            ActeurFactory af = deps.getInstance(ActeurFactory.class);
+            result = new MethodNotAllowedPage(af.matchMethods(true, table.methods(ix)));
+            result.setApplication(this);
+            result.share();
+            methodNotAllowedPages.put(type, result);
+        }
+        return result;
+    }
+
+    /**
+     * Stands in for a page whose route says it responds with 405 to a
+     * method, so the page itself need not be created.
+     */
+    private static final class MethodNotAllowedPage extends Page {
+
+        MethodNotAllowedPage(Acteur matchMethods) {
+            add(matchMethods);
+        }
+    }
+
+    private Page instantiate(Class<? extends Page> type, boolean shared) {
+        if (shared) {
+            Page result = sharedPages.get(type);
+            if (result == null) {
+                synchronized (sharedPages) {
+                    result = sharedPages.get(type);
+                    if (result == null) {
+                        result = instantiate(type, false);
+                        result.share();
+                        sharedPages.put(type, result);
+                    }
+                }
+            }
+            return result;
+        }
+        // Pages can be created while a chain is running on this thread, e.g.
+        // by one listing all pages; headers set by the constructors of their
+        // acteurs belong to the acteurs, not that chain's response
+        ResponseImpl current = ResponseImpl.current();
+        ResponseImpl.setCurrent(null);
+        try {
+            Page result = provider(type).get();
+            result.setApplication(this);
+            return result;
+        } finally {
+            ResponseImpl.setCurrent(current);
+        }
+    }
+
     @Override
     public Iterator<Page> iterator() {
         final Iterator<Class<? extends Page>> it = pages.iterator();
@@ -278,9 +504,42 @@ public class Application implements Iterable<Page> {
 
             @Override
             public Page next() {
-                Class<? extends Page> clazz = it.next();
-                Page result = deps.getInstance(clazz);
-                result.setApplication(Application.this);
+                Class<? extends Page> type = it.next();
+                return instantiate(type, type.isAnnotationPresent(SharedPage.class));
+            }
+
+            @Override
+            public void remove() {
+                throw new UnsupportedOperationException("Not supported");
+            }
+        };
+    }
+
+    /**
+     * Iterate only those pages whose routes match the passed event, in
+     * the order they were added.
+     *
+     * @param event The request
+     * @return An iterator which instantiates pages on demand
+     */
+    Iterator<Page> iterator(Event event) {
+        final RouteTable table = routes();
+        final Method method = event.getMethod();
+        final BitSet candidates = table.candidates(method, event.getPath());
+        return new Iterator<Page>() {
+            private int ix = candidates.nextSetBit(0);
+
+            @Override
+            public boolean hasNext() {
+                return ix >= 0;
+            }
+
+            @Override
+            public Page next() {
+                Page result = table.accepts(ix, method)
+                        ? instantiate(table.type(ix), table.isShared(ix))
+                        : methodNotAllowed(table, ix);
+                ix = candidates.nextSetBit(ix + 1);
                 return result;
             }
 
@@ -291,9 +550,92 @@ public class Application implements Iterable<Page> {
         };
     }
 
-    protected void send404(RequestID id, Event event, Channel channel) {
-        HttpResponse response = createNotFoundResponse(event);
+    /**
+     * Get the cache of 404 responses, which can be used to monitor hits and
+     * misses.
+     *
+     * @return The cache, or null if it is disabled
+     */
+    public NotFoundCache getNotFoundCache() {
+        if (!notFoundCacheInitialized) {
+            synchronized (this) {
+                if (!notFoundCacheInitialized) {
+                    Settings settings = getDependencies().getInstance(Settings.class);
+                    int size = settings.getInt(NOT_FOUND_CACHE_SIZE_SETTINGS_KEY, DEFAULT_NOT_FOUND_CACHE_SIZE);
+                    if (size > 0) {
+                        notFoundCache = new NotFoundCache(size,
+                                settings.getBoolean(NOT_FOUND_CACHE_ALL_SETTINGS_KEY, false));
+                    }
+                    notFoundCacheInitialized = true;
+                }
+            }
+        }
+        return notFoundCache;
+    }
+
+    @Inject
+    void readDebugSettings(Settings settings) {
+        Acteur.setCaptureStacks(settings.getBoolean(CAPTURE_ACTEUR_STACKS_SETTINGS_KEY, false));
+    }
+
+    /**
+     * Determine if a request is already known to produce a 404 without
+     * trying any pages.
+     *
+     * @param event The request
+     * @return true if a 404 can be sent immediately
+     */
+    boolean isKnownNotFound(Event event) {
+        NotFoundCache cache = getNotFoundCache();
+        return cache != null && cache.contains(event);
+    }
+
+    private HttpResponse notFoundResponse(Event event, boolean routeOnly) {
+        NotFoundCache cache = getNotFoundCache();
+        if (cache == null) {
+            return createNotFoundResponse(event);
+        }
+        HttpResponse result = cache.get(event);
+        if (result == null) {
+            cache.miss();
+            result = createNotFoundResponse(event);
+            if (routeOnly || cache.isCacheAll()) {
+                cache.put(event, result);
+            }
+        }
+        return result;
+    }
+
+    void sendServiceUnavailable(RequestID id, Event event, Channel channel, Duration retryAfter) {
+        HttpResponse response = createServiceUnavailableResponse(event, retryAfter);
         onBeforeRespond(id, event, response.getStatus());
+        ChannelFuture fut = channel.write(response);
+        if (!event.isKeepAlive()) {
+            fut.addListener(ChannelFutureListener.CLOSE);
+        }
+    }
+
+    protected void send404(RequestID id, Event event, Channel channel) {
+        send404(id, event, channel, routes().candidates(event.getMethod(), event.getPath()).isEmpty(), false);
+    }
+
+    /**
+     * Send a 404.
+     *
+     * @param routeOnly Whether the request was rejected for its method and
+     * path alone, so any request with the same ones can be sent the same
+     * response
+     * @param warmUp Whether this is a WarmUp request, whose response is
+     * neither cached nor logged
+     */
+    void send404(RequestID id, Event event, Channel channel, boolean routeOnly, boolean warmUp) {
+        HttpResponse response;
+        if (warmUp) {
+            response = createNotFoundResponse(event);
+        } else {
+            response = notFoundResponse(event, routeOnly);
+            onBeforeRespond(id, event, response.getStatus());
+        }
         ChannelFutureListener closer = !event.isKeepAlive() ? ChannelFutureListener.CLOSE : null;
         ChannelFuture fut = channel.write(response);
         if (closer != null) {
@@ -0,0 +1,77 @@
+/* 
+ * The MIT License
+ *
+ * Copyright 2013 Tim Boudreau.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.mastfrog.acteur;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Annotation for Page subclasses whose chains of Acteurs should run on a
+ * pool of threads of their own, with a limit on how many requests may use
+ * it at once, so that a page which is slow - say, waiting on a database -
+ * cannot tie up the threads every other page needs.  Requests over the
+ * limit get a response with the rejection status and, if set, a
+ * <code>Retry-After</code> header.  A request only counts against the limit
+ * once the acteurs at the head of the page which match its method or path
+ * have accepted it;  those it fails go on to the next page.
+ *
+ * @see Bulkheads
+ * @author Tim Boudreau
+ */
+@Target(value = ElementType.TYPE)
+@Retention(value = RetentionPolicy.RUNTIME)
+public @interface Bulkhead {
+
+    /**
+     * The number of threads the page's chains run on.
+     *
+     * @return A thread count
+     */
+    int threads() default 4;
+
+    /**
+     * The number of requests which may wait for one of the threads, beyond
+     * those running.
+     *
+     * @return A count
+     */
+    int queue() default 16;
+
+    /**
+     * The status of the response to requests over the limit.
+     *
+     * @return An HTTP status code
+     */
+    int rejectionStatus() default 503;
+
+    /**
+     * Seconds to send in the <code>Retry-After</code> header of the response
+     * to requests over the limit, or 0 to send none.
+     *
+     * @return A number of seconds
+     */
+    int retryAfter() default 1;
+}
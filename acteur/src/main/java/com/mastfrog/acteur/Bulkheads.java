@@ -0,0 +1,191 @@
+/* 
+ * The MIT License
+ *
+ * Copyright 2013 Tim Boudreau.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.mastfrog.acteur;
+
+import com.google.inject.Inject;
+import com.google.inject.Provider;
+import com.google.inject.Singleton;
+import com.mastfrog.acteur.server.ThreadPools;
+import com.mastfrog.giulius.ShutdownHookRegistry;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The executors and concurrency quotas of pages marked
+ * {@link Bulkhead &#064;Bulkhead}, created the first time each page is
+ * tried.  Each executor is listed in {@link ThreadPools} as
+ * <code>bulkhead-</code> followed by the page's name, and is shut down
+ * along with the application's other dependencies.
+ *
+ * @author Tim Boudreau
+ */
+@Singleton
+public final class Bulkheads {
+
+    private static final ClassValue<Bulkhead> ANNOTATIONS = new ClassValue<Bulkhead>() {
+        @Override
+        protected Bulkhead computeValue(Class<?> type) {
+            return type.getAnnotation(Bulkhead.class);
+        }
+    };
+    private final ConcurrentMap<Class<?>, Compartment> compartments = new ConcurrentHashMap<>();
+    private final Provider<Application> application;
+    @Inject(optional = true)
+    private ThreadPools pools;
+    private volatile boolean shutdown;
+
+    @Inject
+    Bulkheads(Provider<Application> application, ShutdownHookRegistry hooks) {
+        this.application = application;
+        hooks.add(new Runnable() {
+            @Override
+            public void run() {
+                shutdown();
+            }
+        });
+    }
+
+    /**
+     * Shut down the executors, so requests for pages with a bulkhead are
+     * refused from now on.
+     */
+    void shutdown() {
+        synchronized (this) {
+            shutdown = true;
+        }
+        for (Compartment c : compartments.values()) {
+            c.executor.shutdown();
+        }
+    }
+
+    /**
+     * Get the number of requests turned away by a page's bulkhead.
+     *
+     * @param pageType The page type
+     * @return A count, or -1 if the page has no bulkhead or has not been used
+     */
+    public long getRejections(Class<? extends Page> pageType) {
+        Compartment c = compartments.get(pageType);
+        return c == null ? -1 : c.rejections.get();
+    }
+
+    /**
+     * Get the number of requests currently running or waiting in a page's
+     * bulkhead.
+     *
+     * @param pageType The page type
+     * @return A count, or -1 if the page has no bulkhead or has not been used
+     */
+    public int getOccupancy(Class<? extends Page> pageType) {
+        Compartment c = compartments.get(pageType);
+        return c == null ? -1 : c.capacity - c.permits.availablePermits();
+    }
+
+    /**
+     * Get the bulkhead for a page type.
+     *
+     * @param pageType The page type
+     * @return Its bulkhead, or null if it is not annotated
+     */
+    Compartment get(Class<?> pageType) {
+        Bulkhead b = ANNOTATIONS.get(pageType);
+        if (b == null) {
+            return null;
+        }
+        Compartment result = compartments.get(pageType);
+        if (result == null) {
+            synchronized (this) {
+                result = compartments.get(pageType);
+                if (result == null) {
+                    result = new Compartment(pageType, b);
+                    if (shutdown) {
+                        result.executor.shutdown();
+                    }
+                    compartments.put(pageType, result);
+                }
+            }
+        }
+        return result;
+    }
+
+    final class Compartment implements ThreadFactory, Thread.UncaughtExceptionHandler {
+
+        private final String name;
+        private final int capacity;
+        private final Semaphore permits;
+        private final AtomicLong rejections = new AtomicLong();
+        private final AtomicInteger threadCount = new AtomicInteger();
+        final ExecutorService executor;
+        final Bulkhead spec;
+
+        Compartment(Class<?> pageType, Bulkhead spec) {
+            this.spec = spec;
+            name = "bulkhead-" + pageType.getSimpleName();
+            capacity = Math.max(1, spec.threads()) + Math.max(0, spec.queue());
+            permits = new Semaphore(capacity);
+            // The queue is unbounded so tasks of a request already admitted
+            // are never refused;  the permits bound it
+            executor = Executors.newFixedThreadPool(Math.max(1, spec.threads()), this);
+            if (pools != null) {
+                pools.register(name, "bulkhead", executor, spec.threads(), rejections);
+            }
+        }
+
+        /**
+         * Take a place in the bulkhead.
+         *
+         * @return false if it is full
+         */
+        boolean tryEnter() {
+            if (permits.tryAcquire()) {
+                return true;
+            }
+            rejections.incrementAndGet();
+            return false;
+        }
+
+        void exit() {
+            permits.release();
+        }
+
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread t = new Thread(r, name + "-" + threadCount.getAndIncrement());
+            t.setDaemon(true);
+            t.setUncaughtExceptionHandler(this);
+            return t;
+        }
+
+        @Override
+        public void uncaughtException(Thread t, Throwable e) {
+            application.get().onError(e);
+        }
+    }
+}
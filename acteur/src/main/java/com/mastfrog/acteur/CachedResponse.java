@@ -0,0 +1,129 @@
+/* 
+ * The MIT License
+ *
+ * Copyright 2013 Tim Boudreau.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.mastfrog.acteur;
+
+import com.mastfrog.acteur.util.Headers;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.handler.codec.http.DefaultFullHttpResponse;
+import io.netty.handler.codec.http.FullHttpResponse;
+import io.netty.handler.codec.http.HttpHeaders;
+import io.netty.handler.codec.http.HttpResponse;
+import io.netty.handler.codec.http.HttpResponseStatus;
+import io.netty.handler.codec.http.HttpVersion;
+import java.util.List;
+import java.util.Map;
+import org.joda.time.DateTime;
+
+/**
+ * An immutable copy of a complete response, which can be sent any number of
+ * times.  Each copy gets a current <code>Date</code> header, unless it is to
+ * be decorated for the request it is sent to, which adds one.
+ *
+ * @author Tim Boudreau
+ */
+final class CachedResponse {
+
+    private final HttpVersion version;
+    private final HttpResponseStatus status;
+    private final String[] names;
+    private final String[] values;
+    private final byte[] body;
+    private final Acteur acteur;
+
+    CachedResponse(FullHttpResponse response) {
+        this(response, bytes(response.data()), null);
+    }
+
+    CachedResponse(HttpResponse response, byte[] body) {
+        this(response, body, null);
+    }
+
+    /**
+     * Copy the headers of a response whose body is sent separately.
+     *
+     * @param response The response
+     * @param body The body
+     * @param acteur The acteur which produced the response, if copies are
+     * to be decorated like the original
+     */
+    CachedResponse(HttpResponse response, byte[] body, Acteur acteur) {
+        version = response.getProtocolVersion();
+        status = response.getStatus();
+        List<Map.Entry<String, String>> entries = response.headers().entries();
+        int count = 0;
+        for (Map.Entry<String, String> e : entries) {
+            if (!HttpHeaders.Names.DATE.equalsIgnoreCase(e.getKey())) {
+                count++;
+            }
+        }
+        names = new String[count];
+        values = new String[count];
+        int ix = 0;
+        for (Map.Entry<String, String> e : entries) {
+            if (!HttpHeaders.Names.DATE.equalsIgnoreCase(e.getKey())) {
+                names[ix] = e.getKey();
+                values[ix++] = e.getValue();
+            }
+        }
+        this.body = body;
+        this.acteur = acteur;
+    }
+
+    private static byte[] bytes(ByteBuf data) {
+        byte[] result = new byte[data.readableBytes()];
+        data.getBytes(data.readerIndex(), result);
+        return result;
+    }
+
+    HttpResponseStatus getStatus() {
+        return status;
+    }
+
+    Acteur getActeur() {
+        return acteur;
+    }
+
+    HttpResponse toResponse() {
+        HttpResponse result = toUndecoratedResponse();
+        Headers.write(Headers.DATE, new DateTime(), result);
+        return result;
+    }
+
+    /**
+     * Make a copy without a <code>Date</code> header, for the caller to
+     * decorate.
+     *
+     * @return A response
+     */
+    HttpResponse toUndecoratedResponse() {
+        DefaultFullHttpResponse result = new DefaultFullHttpResponse(version, status,
+                Unpooled.wrappedBuffer(body));
+        HttpHeaders headers = result.headers();
+        for (int i = 0; i < names.length; i++) {
+            headers.add(names[i], values[i]);
+        }
+        return result;
+    }
+}
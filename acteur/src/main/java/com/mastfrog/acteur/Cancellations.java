@@ -0,0 +1,100 @@
+/* 
+ * The MIT License
+ *
+ * Copyright 2013 Tim Boudreau.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.mastfrog.acteur;
+
+import com.google.inject.Singleton;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counts the work abandoned because the client disconnected before its
+ * response was ready, or because a page's {@link Deadline} passed.
+ *
+ * @author Tim Boudreau
+ */
+@Singleton
+public final class Cancellations {
+
+    private final AtomicLong disconnected = new AtomicLong();
+    private final AtomicLong timedOut = new AtomicLong();
+    private final AtomicLong skippedActeurs = new AtomicLong();
+    private final AtomicLong cancelledFutures = new AtomicLong();
+
+    /**
+     * Requests abandoned because the client closed the connection.
+     *
+     * @return A count
+     */
+    public long getDisconnected() {
+        return disconnected.get();
+    }
+
+    /**
+     * Requests answered with 503 because their page's deadline passed.
+     *
+     * @return A count
+     */
+    public long getTimedOut() {
+        return timedOut.get();
+    }
+
+    /**
+     * Acteurs which were never run because their request was abandoned.
+     *
+     * @return A count
+     */
+    public long getSkippedActeurs() {
+        return skippedActeurs.get();
+    }
+
+    /**
+     * Futures of deferred states cancelled because their request was
+     * abandoned.
+     *
+     * @return A count
+     */
+    public long getCancelledFutures() {
+        return cancelledFutures.get();
+    }
+
+    void disconnected(int skipped) {
+        disconnected.incrementAndGet();
+        skippedActeurs.addAndGet(skipped);
+    }
+
+    void timedOut(int skipped) {
+        timedOut.incrementAndGet();
+        skippedActeurs.addAndGet(skipped);
+    }
+
+    void cancelledFuture() {
+        cancelledFutures.incrementAndGet();
+    }
+
+    @Override
+    public String toString() {
+        return "Cancellations{disconnected=" + disconnected + ", timedOut="
+                + timedOut + ", skippedActeurs=" + skippedActeurs
+                + ", cancelledFutures=" + cancelledFutures + '}';
+    }
+}
@@ -0,0 +1,68 @@
+/* 
+ * The MIT License
+ *
+ * Copyright 2013 Tim Boudreau.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.mastfrog.acteur;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Annotation for Page subclasses whose identical concurrent GET and HEAD
+ * requests should be coalesced:  while one request runs the page's Acteurs,
+ * others for the same method, path, parameters and headers wait for it and
+ * are sent a copy of its response, rather than running them too.
+ * <p/>
+ * Only complete responses with a body set as a message are shared, and
+ * never ones which set cookies or fail with a 5xx status;  otherwise the
+ * waiting requests run the page's Acteurs themselves.  Obviously this is
+ * only for pages whose responses do not depend on who is asking, beyond
+ * what is named here and in the page's <code>Vary</code> headers.
+ * Requests with different <code>Authorization</code>,
+ * <code>Proxy-Authorization</code> or <code>Cookie</code> headers are
+ * never coalesced, whatever is named here.
+ *
+ * @see RequestCoalescer
+ * @author Tim Boudreau
+ */
+@Target(value = ElementType.TYPE)
+@Retention(value = RetentionPolicy.RUNTIME)
+public @interface Coalesce {
+
+    /**
+     * Query parameters which distinguish one response from another;  if
+     * empty, all of them do.
+     *
+     * @return Parameter names
+     */
+    String[] parameters() default {};
+
+    /**
+     * Request headers which distinguish one response from another, in
+     * addition to the page's <code>Vary</code> headers.
+     *
+     * @return Header names
+     */
+    String[] headers() default {};
+}
@@ -0,0 +1,61 @@
+/* 
+ * The MIT License
+ *
+ * Copyright 2013 Tim Boudreau.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.mastfrog.acteur;
+
+import com.mastfrog.url.Path;
+import java.util.BitSet;
+import java.util.List;
+
+/**
+ * Path matching for &#064;{@link Route} pages, generated at build time by
+ * the <code>acteur-route-processor</code> annotation processor, so that the
+ * route patterns are checked by the compiler and matched by straight-line
+ * code rather than parsed into a trie at startup. The processor also
+ * generates a Guice module binding its implementation, named for the
+ * package it is generated in;  install that module with
+ * <code>ServerModule.add()</code> and pages it covers are matched by it.
+ * Modules generated for several libraries of pages may be installed
+ * together. Pages must still be added to the application in order,
+ * since the order determines which page responds.
+ *
+ * @author Tim Boudreau
+ */
+public interface CompiledRoutes {
+
+    /**
+     * The page types this object matches paths for.
+     *
+     * @return A list of page types
+     */
+    List<Class<? extends Page>> types();
+
+    /**
+     * Set the bit for each page whose route paths and path length bounds
+     * match the passed path.
+     *
+     * @param path The request path
+     * @param into A set of indices into <code>types()</code>
+     */
+    void match(Path path, BitSet into);
+}
@@ -43,6 +43,8 @@ import java.util.logging.Logger;
  *
  * @author Tim Boudreau
  */
+@SharedPage
+@Route(methods = Method.GET)
 final class HelpPage extends Page {
 
     public static final String HELP_URL_PATTERN_SETTINGS_KEY = "helpUrlPattern";
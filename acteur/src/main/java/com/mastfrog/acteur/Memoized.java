@@ -0,0 +1,87 @@
+/* 
+ * The MIT License
+ *
+ * Copyright 2013 Tim Boudreau.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.mastfrog.acteur;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Annotation for Acteur classes whose State's context depends only on some
+ * parts of the request, such as one which looks up a configuration by a
+ * path element.  Once one has run for a given combination of them, later
+ * requests with the same combination skip constructing it, and are given
+ * the objects it contributed last time.
+ * <p/>
+ * This only applies to Acteurs added to a page as classes, and only
+ * ConsumedState and ConsumedLockedState contexts are remembered; the
+ * objects in them are shared across requests, so they must be immutable or
+ * thread-safe.  Only Acteurs which just contribute context are remembered:
+ * one which sets a header, response code, message or body writer runs for
+ * every request, since skipping it would lose those.  It is never skipped
+ * when it is the last in its page.
+ *
+ * @see ActeurCache
+ * @author Tim Boudreau
+ */
+@Target(value = ElementType.TYPE)
+@Retention(value = RetentionPolicy.RUNTIME)
+public @interface Memoized {
+
+    /**
+     * Indices of the path elements the context depends on.
+     *
+     * @return Indices
+     */
+    int[] pathElements() default {};
+
+    /**
+     * Query parameters the context depends on.
+     *
+     * @return Parameter names
+     */
+    String[] parameters() default {};
+
+    /**
+     * Request headers the context depends on.
+     *
+     * @return Header names
+     */
+    String[] headers() default {};
+
+    /**
+     * How long a context is reused for, in milliseconds.
+     *
+     * @return The time to live
+     */
+    long ttl() default 60000;
+
+    /**
+     * The maximum number of contexts to remember for this Acteur.
+     *
+     * @return The size bound
+     */
+    int maximumSize() default 1000;
+}
@@ -0,0 +1,60 @@
+/* 
+ * The MIT License
+ *
+ * Copyright 2013 Tim Boudreau.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.mastfrog.acteur;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Inherited;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Annotation for Acteur subclasses whose constructor and
+ * <code>getState()</code> never block - they do no I/O, take no contended
+ * locks and wait for nothing, but only look at the request and objects
+ * already in scope.
+ * <p/>
+ * Normally each Acteur in a page's chain is run as a separate task on the
+ * worker thread pool.  Consecutive non-blocking Acteurs are instead run on
+ * the thread that ran the previous one, within a single entry into the
+ * request scope, so a chain of cheap checks followed by a cheap response
+ * costs one thread hand-off rather than one per Acteur.
+ * <p/>
+ * If the <code>acteur.affinity</code> setting is true, they go further and
+ * run on the event loop of the request's channel, starting on the thread
+ * which received the request, so a chain made only of non-blocking Acteurs
+ * is processed and its response written without any thread hand-off.  The
+ * runner moves to the worker pool only for Acteurs without this annotation,
+ * and back to the event loop after them.  A mistakenly annotated Acteur
+ * then stalls every connection on that event loop, so use it with care.
+ * <p/>
+ * Inherited by subclasses, including anonymous ones.
+ *
+ * @author Tim Boudreau
+ */
+@Target(value = ElementType.TYPE)
+@Retention(value = RetentionPolicy.RUNTIME)
+@Inherited
+public @interface NonBlocking {
+}
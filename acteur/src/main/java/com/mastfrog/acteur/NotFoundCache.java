@@ -0,0 +1,151 @@
+/* 
+ * The MIT License
+ *
+ * Copyright 2013 Tim Boudreau.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.mastfrog.acteur;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.mastfrog.acteur.util.Method;
+import io.netty.handler.codec.http.FullHttpResponse;
+import io.netty.handler.codec.http.HttpResponse;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A bounded cache of (method, path) pairs which are known to produce a 404,
+ * with the response the application generated for them, so that repeated
+ * requests for them - typically from scanners - are answered without
+ * walking pages or rebuilding the response.  Only the body and headers are
+ * kept;  each hit gets a fresh response object with a current
+ * <code>Date</code> header.
+ * <p/>
+ * The cache is cleared whenever the application's set of pages changes.
+ *
+ * @author Tim Boudreau
+ */
+public final class NotFoundCache {
+
+    private final Cache<Key, CachedResponse> cache;
+    private final boolean cacheAll;
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    NotFoundCache(int maximumSize, boolean cacheAll) {
+        this.cache = CacheBuilder.newBuilder().maximumSize(maximumSize).build();
+        this.cacheAll = cacheAll;
+    }
+
+    /**
+     * Whether every 404 is cached, rather than only those for which no
+     * page's route matched, or which every page tried rejected with an
+     * acteur that only examines the method and path.
+     *
+     * @return true if all 404s are cached
+     */
+    boolean isCacheAll() {
+        return cacheAll;
+    }
+
+    /**
+     * Get the number of 404 responses served from the cache.
+     *
+     * @return The hit count
+     */
+    public long getHits() {
+        return hits.get();
+    }
+
+    /**
+     * Get the number of 404 responses which had to be generated.
+     *
+     * @return The miss count
+     */
+    public long getMisses() {
+        return misses.get();
+    }
+
+    /**
+     * Get the number of (method, path) pairs currently cached.
+     *
+     * @return The size
+     */
+    public long size() {
+        return cache.size();
+    }
+
+    boolean contains(Event event) {
+        return cache.getIfPresent(new Key(event)) != null;
+    }
+
+    HttpResponse get(Event event) {
+        CachedResponse result = cache.getIfPresent(new Key(event));
+        if (result != null) {
+            hits.incrementAndGet();
+            return result.toResponse();
+        }
+        return null;
+    }
+
+    void miss() {
+        misses.incrementAndGet();
+    }
+
+    void put(Event event, HttpResponse response) {
+        if (response instanceof FullHttpResponse) {
+            cache.put(new Key(event), new CachedResponse((FullHttpResponse) response));
+        }
+    }
+
+    void invalidate() {
+        cache.invalidateAll();
+    }
+
+    @Override
+    public String toString() {
+        return "NotFoundCache{size=" + size() + ", hits=" + hits + ", misses=" + misses + '}';
+    }
+
+    private static final class Key {
+
+        private final Method method;
+        private final String path;
+
+        Key(Event event) {
+            this.method = event.getMethod();
+            this.path = event.getPath().toString();
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) o;
+            return method == other.method && path.equals(other.path);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * (method == null ? 0 : method.hashCode()) + path.hashCode();
+        }
+    }
+}
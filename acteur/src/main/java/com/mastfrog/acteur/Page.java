@@ -26,7 +26,6 @@ package com.mastfrog.acteur;
 import com.mastfrog.acteur.util.HeaderValueType;
 import com.mastfrog.acteur.util.Headers;
 import com.google.common.net.MediaType;
-import com.mastfrog.giulius.Dependencies;
 import com.mastfrog.guicy.scope.ReentrantScope;
 import com.mastfrog.acteur.util.CacheControl;
 import com.mastfrog.settings.Settings;
@@ -73,24 +72,56 @@ import org.joda.time.Duration;
 public abstract class Page implements Iterable<Acteur> {
 
     private static final ThreadLocal<Page> CURRENT_PAGE = new ThreadLocal<>();
-    protected ResponseHeaders responseHeaders = new ResponseHeaders();
-    private final List<Object> acteurs = Collections.synchronizedList(new ArrayList<>());
+    protected volatile ResponseHeaders responseHeaders = new ResponseHeaders();
+    private volatile List<Object> acteurs = Collections.synchronizedList(new ArrayList<>());
     volatile Application application;
+    private volatile boolean shared;
 
     protected Page() {
     }
 
-    protected synchronized final void setResponseHeaders(ResponseHeaders props) {
+    protected final void setResponseHeaders(ResponseHeaders props) {
+        checkNotShared();
         this.responseHeaders = props;
     }
 
-    public synchronized ResponseHeaders getReponseHeaders() {
+    public ResponseHeaders getReponseHeaders() {
         return responseHeaders;
     }
 
     public final void add(Acteur action) {
+        checkNotShared();
         acteurs.add(action);
     }
+
+    private void checkNotShared() {
+        if (shared) {
+            throw new IllegalStateException(getClass().getName() + " is a "
+                    + "shared page and cannot be modified after construction");
+        }
+    }
+
+    /**
+     * Make this page immutable so that one instance can serve all requests.
+     * The list of acteurs is snapshotted into an unsynchronized immutable
+     * list, and acteur instances are told they will be called concurrently;
+     * headers their constructors set are frozen along with the page's.
+     */
+    final void share() {
+        List<Object> snapshot = new ArrayList<>(acteurs);
+        for (Object o : snapshot) {
+            if (o instanceof Acteur) {
+                ((Acteur) o).share();
+            }
+        }
+        responseHeaders.freeze();
+        acteurs = Collections.unmodifiableList(snapshot);
+        shared = true;
+    }
+
+    final boolean isShared() {
+        return shared;
+    }
     
     protected String getDescription() {
         return getClass().getSimpleName();
@@ -147,6 +178,7 @@ public abstract class Page implements Iterable<Acteur> {
                     + Acteur.class.getName());
         }
         assert Application.checkConstructor(action);
+        checkNotShared();
         acteurs.add(action);
     }
 
@@ -158,12 +190,54 @@ public abstract class Page implements Iterable<Acteur> {
         this.application = app;
     }
 
+    /**
+     * Determine if the acteur at an index is marked &#064;{@link NonBlocking},
+     * without instantiating it.
+     */
+    final boolean isNonBlocking(int ix) {
+        Object o = acteurs.get(ix);
+        return NON_BLOCKING.get(o instanceof Class<?> ? (Class<?>) o : o.getClass());
+    }
+
+    private static final ClassValue<Boolean> NON_BLOCKING = new ClassValue<Boolean>() {
+        @Override
+        protected Boolean computeValue(Class<?> type) {
+            return type.isAnnotationPresent(NonBlocking.class);
+        }
+    };
+
+    /**
+     * Determine if the acteur at an index only examines the request, such as
+     * those {@link ActeurFactory} creates to match the method or path.
+     */
+    final boolean isPredicate(int ix) {
+        Object o = acteurs.get(ix);
+        return PREDICATE.get(o instanceof Class<?> ? (Class<?>) o : o.getClass());
+    }
+
+    private static final ClassValue<Boolean> PREDICATE = new ClassValue<Boolean>() {
+        @Override
+        protected Boolean computeValue(Class<?> type) {
+            return PredicateActeur.class.isAssignableFrom(type)
+                    || ActeurFactory.MatchMethods.class == type;
+        }
+    };
+
+    /**
+     * Get the class of the acteur at an index if it was added as a class,
+     * to be instantiated per request, or null if it was added as an instance.
+     */
+    final Class<?> acteurType(int ix) {
+        Object o = acteurs.get(ix);
+        return o instanceof Class<?> ? (Class<?>) o : null;
+    }
+
     final int countActeurs() {
         return acteurs.size();
     }
 
     final List<Object> getActeurs() {
-        return Collections.unmodifiableList(acteurs);
+        return shared ? acteurs : Collections.unmodifiableList(acteurs);
     }
 
     final Acteur getActeur(int ix) {
@@ -179,10 +253,9 @@ public abstract class Page implements Iterable<Acteur> {
             }
             Object o = acteurs.get(ix);
             if (o instanceof Class<?>) {
-                Dependencies deps = application.getDependencies();
                 try {
                     Class<? extends Acteur> c = (Class<? extends Acteur>) o;
-                    return deps.getInstance(c);
+                    return application.provider(c).get();
                 } catch (ThreadDeath | OutOfMemoryError e) {
                     return Exceptions.chuck(e);
                 } catch (final Exception t) {
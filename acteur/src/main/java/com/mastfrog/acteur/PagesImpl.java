@@ -23,30 +23,77 @@
  */
 package com.mastfrog.acteur;
 
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.SettableFuture;
+import com.google.common.util.concurrent.Uninterruptibles;
 import com.google.inject.Inject;
+import com.mastfrog.acteur.util.Headers;
 import com.mastfrog.acteur.util.RequestID;
+import com.mastfrog.guicy.scope.ReentrantScope;
+import com.mastfrog.settings.Settings;
 import com.mastfrog.util.Exceptions;
+import io.netty.util.CharsetUtil;
 import io.netty.channel.Channel;
 import io.netty.channel.ChannelFuture;
 import io.netty.channel.ChannelFutureListener;
+import io.netty.channel.EventLoop;
+import io.netty.handler.codec.http.HttpHeaders;
 import io.netty.handler.codec.http.HttpResponse;
+import java.util.ArrayList;
 import java.util.Iterator;
-import java.util.concurrent.Callable;
+import java.util.List;
+import java.util.concurrent.CancellationException;
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import org.joda.time.Duration;
 
 /**
  * Thing which takes an event and runs it against all of the pages of the
- * application until one responds; or sends a 404 if none does.
+ * application whose routes match it until one responds; or sends a 404 if
+ * none does.
  *
  * @author Tim Boudreau
  */
 final class PagesImpl implements Pages {
 
+    /**
+     * Default {@link Deadline} in milliseconds for pages which do not have
+     * the annotation; 0 means none.
+     */
+    static final String PAGE_DEADLINE_SETTINGS_KEY = "acteur.page.deadline";
+    /**
+     * Run &#064;NonBlocking acteurs on the event loop of the request's channel
+     * rather than the worker pool; see {@link NonBlocking}.
+     */
+    static final String AFFINITY_SETTINGS_KEY = "acteur.affinity";
     private final Application application;
+    private final boolean debug;
+    private final Cancellations cancellations;
+    private final RequestCoalescer coalescer;
+    private final ActeurCache acteurCache;
+    private final AdmissionController admission;
+    private final Bulkheads bulkheads;
+    private final long defaultDeadline;
+    private final boolean affinity;
 
     @Inject
-    PagesImpl(Application application) {
+    PagesImpl(Application application, Settings settings, Cancellations cancellations, RequestCoalescer coalescer, ActeurCache acteurCache, AdmissionController admission, Bulkheads bulkheads) {
         this.application = application;
+        this.cancellations = cancellations;
+        this.coalescer = coalescer;
+        this.acteurCache = acteurCache;
+        this.admission = admission;
+        this.bulkheads = bulkheads;
+        debug = settings.getBoolean("acteur.debug", true);
+        defaultDeadline = settings.getLong(PAGE_DEADLINE_SETTINGS_KEY, 0L);
+        affinity = settings.getBoolean(AFFINITY_SETTINGS_KEY, false);
     }
 
     /**
@@ -60,14 +107,139 @@ final class PagesImpl implements Pages {
      */
     @Override
     public final CountDownLatch onEvent(final RequestID id, final Event event, final Channel channel) {
-        Iterator<Page> it = application.iterator();
-        CountDownLatch latch = new CountDownLatch(1);
-        PageRunner pageRunner = new PageRunner(application, it, latch, id, event, channel);
-        application.getWorkerThreadPool().submit(pageRunner);
+        return onEvent(id, event, channel, false);
+    }
+
+    /**
+     * Process a request, which, if it is one of WarmUp's, is not logged or
+     * counted by the admission controller, and whose 404s and acteur
+     * contexts are not cached.
+     */
+    CountDownLatch onEvent(final RequestID id, final Event event, final Channel channel, boolean warmUp) {
+        Iterator<Page> it = application.iterator(event);
+        if (!it.hasNext() || (!warmUp && application.isKnownNotFound(event))) {
+            // Nothing can respond - answer on this thread rather than
+            // occupying a worker thread
+            CountDownLatch latch = new CountDownLatch(1);
+            try {
+                application.send404(id, event, channel, true, warmUp);
+            } finally {
+                latch.countDown();
+            }
+            return latch;
+        }
+        CountDownLatch latch;
+        if (admission.isEnabled() && !warmUp) {
+            if (!admission.tryAcquire()) {
+                // Over the limit - shed load here rather than queueing
+                latch = new CountDownLatch(1);
+                try {
+                    application.sendServiceUnavailable(id, event, channel, admission.getRetryAfter());
+                } finally {
+                    latch.countDown();
+                }
+                return latch;
+            }
+            latch = new AdmittedLatch(admission);
+        } else {
+            latch = new CountDownLatch(1);
+        }
+        ExecutorService exe = application.getWorkerThreadPool();
+        // WarmUp's embedded channel only runs tasks when asked to
+        EventLoop loop = affinity && !warmUp ? channel.eventLoop() : null;
+        PageRunner pageRunner = new PageRunner(application, exe, loop, it, latch, id, event, channel, debug, cancellations, coalescer, acteurCache, bulkheads, defaultDeadline, admission.getRetryAfter(), warmUp);
+        if (loop != null && loop.inEventLoop()) {
+            // Start right here;  the runner moves to the worker pool when
+            // it reaches an acteur which may block
+            pageRunner.run();
+        } else {
+            pageRunner.submit(exe);
+        }
         return latch;
     }
 
-    private static final class PageRunner implements Callable<Void>, ResponseSender {
+    /**
+     * Latch which tells the admission controller when an admitted request is
+     * done, and how long it took.
+     */
+    private static final class AdmittedLatch extends CountDownLatch {
+
+        private final AdmissionController admission;
+        private final long start = System.nanoTime();
+        private final AtomicBoolean released = new AtomicBoolean();
+
+        AdmittedLatch(AdmissionController admission) {
+            super(1);
+            this.admission = admission;
+        }
+
+        @Override
+        public void countDown() {
+            // Release first, so anyone waiting sees the permit returned
+            if (released.compareAndSet(false, true)) {
+                admission.release(start);
+            }
+            super.countDown();
+        }
+    }
+
+    /**
+     * Pages whose class overrides getActeurs() run their own chain, and we
+     * just wait for them to call back into receive().
+     */
+    private static final ClassValue<Boolean> CUSTOM_ACTEURS = new ClassValue<Boolean>() {
+        @Override
+        protected Boolean computeValue(Class<?> type) {
+            for (Class<?> c = type; c != null && c != Page.class; c = c.getSuperclass()) {
+                try {
+                    c.getDeclaredMethod("getActeurs", ExecutorService.class, ReentrantScope.class);
+                    return true;
+                } catch (NoSuchMethodException e) {
+                    // keep looking
+                }
+            }
+            return false;
+        }
+    };
+
+    /**
+     * The &#064;Deadline of a page class in milliseconds, or -1 if it has none.
+     */
+    private static final ClassValue<Long> DEADLINES = new ClassValue<Long>() {
+        @Override
+        protected Long computeValue(Class<?> type) {
+            Deadline d = type.getAnnotation(Deadline.class);
+            return d == null ? -1L : d.value();
+        }
+    };
+
+    /**
+     * Runs a request through the chain of acteurs of each candidate page in
+     * turn.  Each run() executes an acteur, and any &#064;NonBlocking ones
+     * following it, and then either submits itself again to run the next one,
+     * or moves on to the next page in a loop - so the stack does not grow
+     * with the number of acteurs or pages tried, and the response, state and
+     * scope contents are allocated once per request and reset for each page.
+     * <p/>
+     * No further acteurs are run once the client has disconnected or the
+     * page's {@link Deadline} has passed, and a future a DeferredState is
+     * waiting on is cancelled when either happens.
+     * <p/>
+     * For a page marked &#064;Coalesce, only the first of a set of identical
+     * requests runs the page;  the rest wait for it without holding a thread,
+     * and are sent a copy of its response.
+     * <p/>
+     * A &#064;Memoized acteur whose context is already cached is not
+     * constructed;  the cached context is added as if it had run.
+     * <p/>
+     * The chain of a page with a &#064;Bulkhead runs on the page's own
+     * executor, once it has a place in the page's quota.
+     * <p/>
+     * In affinity mode, &#064;NonBlocking acteurs run on the channel's event
+     * loop, and the runner only moves to the executor for those which are
+     * not.
+     */
+    private static final class PageRunner implements Runnable, ResponseSender {
 
         private final Application application;
         private final Iterator<Page> pages;
@@ -75,62 +247,720 @@ final class PagesImpl implements Pages {
         private final RequestID id;
         private final Event event;
         private final Channel channel;
+        private final boolean debug;
+        // Whether this is a WarmUp request, which is not logged or cached
+        private final boolean warmUp;
+        // The executor for pages without a bulkhead
+        private final ExecutorService baseExe;
+        private ExecutorService exe;
+        // The channel's event loop, in affinity mode
+        private final EventLoop loop;
+        private final ReentrantScope scope;
+        // Runs this within the request scope as it was when the request
+        // arrived, since neither the executors nor the event loop carry it
+        // over to the tasks they run
+        private final Runnable scoped;
+        private final ResponseImpl response = new ResponseImpl();
+        // Objects contributed by acteurs for injection into later ones
+        private final List<Object> context = new ArrayList<>();
+        // Outcomes of predicates shared by the pages tried for this request
+        private final PredicateMemo memo = new PredicateMemo();
+        // Whether every page tried so far rejected the request by its method
+        // or path alone
+        private boolean routeOnly = true;
+        private Page page;
+        private int acteurCount;
+        private int index;
+        private Acteur lastActeur;
+        private State lastState;
+        private final Cancellations cancellations;
+        private final RequestCoalescer coalescer;
+        private final ActeurCache acteurCache;
+        private final Bulkheads bulkheads;
+        private final long defaultDeadline;
+        // Retry-After of the 503 sent if an executor rejects the request
+        private final Duration retryAfter;
+        // Bulkhead of the current page, whose place this request holds
+        private volatile Bulkheads.Compartment compartment;
+        // Whether the current page's leading predicates accepted the request,
+        // so that it has been admitted to its bulkhead and coalesced
+        private boolean admitted;
+        // Key and future of a coalesced request this one is running
+        private String flightKey;
+        private SettableFuture<CachedResponse> flight;
+        // Future of a coalesced request this one is waiting on
+        private ListenableFuture<CachedResponse> following;
+        // Future a DeferredState is waiting on
+        private volatile ListenableFuture<?> deferred;
+        // System.nanoTime() the current page must finish by, or 0
+        private long deadline;
+        private volatile boolean timedOut;
+        private ScheduledFuture<?> deadlineTimer;
+        private final ChannelFutureListener onClose = new ChannelFutureListener() {
+            @Override
+            public void operationComplete(ChannelFuture future) throws Exception {
+                cancelDeferred();
+            }
+        };
+        // Continues on the executor once a future this request waits on is
+        // done;  listeners run by a future cannot report a rejection
+        private final Runnable resubmit = new Runnable() {
+            @Override
+            public void run() {
+                submit(exe);
+            }
+        };
+        private final Runnable onDeadline = new Runnable() {
+            @Override
+            public void run() {
+                timedOut = true;
+                cancelDeferred();
+            }
+        };
 
-        public PageRunner(Application application, Iterator<Page> pages, CountDownLatch latch, RequestID id, Event event, Channel channel) {
+        PageRunner(Application application, ExecutorService exe, EventLoop loop, Iterator<Page> pages, CountDownLatch latch, RequestID id, Event event, Channel channel, boolean debug, Cancellations cancellations, RequestCoalescer coalescer, ActeurCache acteurCache, Bulkheads bulkheads, long defaultDeadline, Duration retryAfter, boolean warmUp) {
             this.application = application;
             this.pages = pages;
             this.latch = latch;
             this.id = id;
             this.event = event;
             this.channel = channel;
+            this.debug = debug;
+            this.warmUp = warmUp;
+            this.cancellations = cancellations;
+            this.coalescer = coalescer;
+            this.acteurCache = acteurCache;
+            this.bulkheads = bulkheads;
+            this.defaultDeadline = defaultDeadline;
+            this.retryAfter = retryAfter;
+            this.baseExe = exe;
+            this.exe = exe;
+            this.loop = loop;
+            this.scope = application.getRequestScope();
+            this.scoped = scope.wrap(this);
         }
 
         @Override
-        public Void call() throws Exception {
-            // See if any pages are left
-            if (pages.hasNext()) {
-                Page page = pages.next();
-                Page.set(page);
-                try (AutoCloseable ac = application.getRequestScope().enter(page)) {
-                    // if so, grab its acteur runner
-                    Acteurs a = page.getActeurs(application.getWorkerThreadPool(), application.getRequestScope());
-                    // forward the event.  receive() will be called with the final
-                    // state, which will either send the response or re-submit this
-                    // object to call the next page (if any)
-                    a.onEvent(event, this);
+        public void run() {
+            try {
+                for (;;) {
+                    if (following != null) {
+                        if (follow()) {
+                            return;
+                        }
+                        continue;
+                    }
+                    if (page != null && abandoned()) {
+                        return;
+                    }
+                    if (deferred != null) {
+                        if (resume() && finishPage()) {
+                            return;
+                        }
+                        continue;
+                    }
+                    if (page == null && !nextPage()) {
+                        return;
+                    }
+                    if (!admitted && !page.isPredicate(index) && !admit()) {
+                        return;
+                    }
+                    if (loop != null && moved()) {
+                        return;
+                    }
+                    if (!step()) {
+                        if (deferred != null) {
+                            // Give up the thread until the result is ready,
+                            // or until the request is abandoned;  the scope
+                            // is re-entered from the context when it resumes
+                            arm();
+                            deferred.addListener(resubmit, MoreExecutors.sameThreadExecutor());
+                            return;
+                        }
+                        if (loop != null || !admitted || page.isNonBlocking(index)) {
+                            // Acteur added to the context - re-enter the
+                            // scope with it, but stay on this thread;  in
+                            // affinity mode, moved() decides where the next
+                            // one runs, and on admission, admit() does
+                            continue;
+                        }
+                        // Acteur said to continue - run the next one as a
+                        // new task
+                        submit(exe);
+                        return;
+                    }
+                    // The chain for this page is done
+                    if (finishPage()) {
+                        return;
+                    }
                 }
-            } else {
+            } catch (ThreadDeath | OutOfMemoryError e) {
+                land(null);
+                done();
+                Exceptions.chuck(e);
+            } catch (Exception | Error e) {
+                land(null);
+                done();
+                application.onError(e);
+            }
+        }
+
+        /**
+         * Move to the next candidate page, sending a 404 if there are none.
+         *
+         * @return false if the request is finished
+         */
+        @SuppressWarnings("try")
+        private boolean nextPage() throws Exception {
+            if (!pages.hasNext()) {
                 try {
                     // All done, we lose
-                    application.send404(id, event, channel);
+                    application.send404(id, event, channel, routeOnly, warmUp);
                 } finally {
-                    latch.countDown();
+                    done();
+                }
+                return false;
+            }
+            leaveBulkhead();
+            // Pages are created per request, and may be injected with it
+            try (AutoCloseable ac = scope.enter(event, memo)) {
+                page = pages.next();
+            }
+            if (CUSTOM_ACTEURS.get(page.getClass())) {
+                // Its chain cannot be inspected for predicates, so it is
+                // admitted to its bulkhead before it runs
+                routeOnly = false;
+                Bulkheads.Compartment c = bulkheads.get(page.getClass());
+                if (c != null && !c.tryEnter()) {
+                    overflow(c.spec);
+                    return false;
+                }
+                compartment = c;
+                exe = c == null ? baseExe : c.executor;
+                Page.set(page);
+                try (AutoCloseable ac = scope.enter(event, page, memo)) {
+                    // The page's own Acteurs will call receive() when done
+                    Acteurs a = page.getActeurs(exe, scope);
+                    a.onEvent(event, this);
+                }
+                return false;
+            }
+            acteurCount = page.countActeurs();
+            if (acteurCount == 0) {
+                throw new IllegalStateException("No acteurs at all from " + page);
+            }
+            index = 0;
+            lastActeur = null;
+            lastState = null;
+            timedOut = false;
+            long ms = DEADLINES.get(page.getClass());
+            if (ms < 0) {
+                ms = defaultDeadline;
+            }
+            deadline = ms <= 0 ? 0 : System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(ms);
+            response.reset();
+            context.clear();
+            context.add(event);
+            context.add(page);
+            context.add(memo);
+            admitted = false;
+            return true;
+        }
+
+        /**
+         * Called once the current page's leading predicates, which run
+         * wherever the request already is, have accepted it:  wait on an
+         * identical request already running the page if it is coalesced, or
+         * take a place in its bulkhead and move to the bulkhead's executor.
+         * Requests the predicates reject thus neither wait nor need a place,
+         * and fall through to the next page.
+         *
+         * @return false if the request is finished or was resubmitted
+         */
+        private boolean admit() {
+            admitted = true;
+            Bulkheads.Compartment c = bulkheads.get(page.getClass());
+            ExecutorService target = c == null ? baseExe : c.executor;
+            boolean hop = target != exe;
+            exe = target;
+            String key = RequestCoalescer.key(page, event);
+            if (key != null) {
+                SettableFuture<CachedResponse> mine = SettableFuture.create();
+                following = coalescer.join(key, mine);
+                if (following == null) {
+                    flightKey = key;
+                    flight = mine;
+                } else {
+                    // Wait for the identical request already running, without
+                    // holding a place in the page's bulkhead meanwhile
+                    following.addListener(resubmit, MoreExecutors.sameThreadExecutor());
+                    return false;
                 }
             }
-            return null;
+            if (c != null && !c.tryEnter()) {
+                // Any followers run the page themselves, if they can
+                land(null);
+                overflow(c.spec);
+                return false;
+            }
+            compartment = c;
+            if (hop) {
+                // Continue on the executor for this page
+                submit(exe);
+                return false;
+            }
+            return true;
+        }
+
+        /**
+         * In affinity mode, move to the event loop if the next acteur is
+         * non-blocking and to the executor if not.
+         *
+         * @return true if the runner was resubmitted elsewhere
+         */
+        private boolean moved() {
+            // A bulkhead's pages always run on its executor
+            boolean wantLoop = compartment == null && page.isNonBlocking(index);
+            if (wantLoop == loop.inEventLoop()) {
+                return false;
+            }
+            submit(wantLoop ? loop : exe);
+            return true;
+        }
+
+        /**
+         * Continue the request on an executor, or answer it with a 503 if
+         * the executor - a bounded or shut down one - will not take it.
+         */
+        void submit(Executor target) {
+            try {
+                target.execute(scoped);
+            } catch (RejectedExecutionException e) {
+                rejected();
+            }
+        }
+
+        private void rejected() {
+            disarm();
+            deferred = null;
+            land(null);
+            try {
+                if (channel.isOpen()) {
+                    application.sendServiceUnavailable(id, event, channel, retryAfter);
+                }
+            } finally {
+                done();
+            }
+        }
+
+        /**
+         * Respond to a request which could not get a place in the current
+         * page's bulkhead.
+         */
+        private void overflow(Bulkhead spec) {
+            lastActeur = null;
+            lastState = null;
+            response.reset();
+            Page.set(page);
+            try {
+                Acteur busy = Acteur.overloaded(page, spec.rejectionStatus(), spec.retryAfter());
+                lastActeur = busy;
+                lastState = busy.getState();
+                response.merge(busy.ownResponse());
+            } finally {
+                Page.clear();
+            }
+            finishPage();
+        }
+
+        private void leaveBulkhead() {
+            Bulkheads.Compartment c = compartment;
+            if (c != null) {
+                compartment = null;
+                c.exit();
+            }
+        }
+
+        /**
+         * Called once the request is finished, with or without a response.
+         */
+        private void done() {
+            leaveBulkhead();
+            latch.countDown();
+        }
+
+        /**
+         * Send the response of the coalesced request this one waited on, or
+         * run the page if it could not be shared.
+         *
+         * @return true if the request is finished
+         */
+        private boolean follow() throws Exception {
+            ListenableFuture<CachedResponse> future = following;
+            following = null;
+            CachedResponse shared;
+            try {
+                shared = Uninterruptibles.getUninterruptibly(future);
+            } catch (ExecutionException e) {
+                shared = null;
+            }
+            if (shared == null) {
+                coalescer.fellBack();
+                // Run the page after all, which needs a place in its bulkhead
+                Bulkheads.Compartment c = bulkheads.get(page.getClass());
+                if (c != null && !c.tryEnter()) {
+                    overflow(c.spec);
+                    return true;
+                }
+                compartment = c;
+                return false;
+            }
+            coalescer.merged();
+            try {
+                if (channel.isOpen()) {
+                    // Decorate the copy for this request, as the original was
+                    // for the one which ran the page
+                    Acteur acteur = shared.getActeur();
+                    HttpResponse httpResponse = shared.toUndecoratedResponse();
+                    httpResponse = application.decorateResponse(event, page, acteur, httpResponse);
+                    page.decorateResponse(event, acteur, httpResponse);
+                    if (!warmUp) {
+                        application.onBeforeRespond(id, event, shared.getStatus());
+                    }
+                    ChannelFuture fut = channel.write(httpResponse);
+                    if (!event.isKeepAlive()) {
+                        fut.addListener(ChannelFutureListener.CLOSE);
+                    }
+                }
+            } finally {
+                done();
+            }
+            return true;
+        }
+
+        /**
+         * Release any requests waiting on this one.
+         *
+         * @param shared The response to send them, or null if they should run
+         * the page themselves
+         */
+        private void land(CachedResponse shared) {
+            if (flight != null) {
+                SettableFuture<CachedResponse> f = flight;
+                flight = null;
+                coalescer.land(flightKey, f, shared);
+                flightKey = null;
+            }
+        }
+
+        /**
+         * Copy a response about to be sent, before it is decorated for this
+         * request, if requests waiting on this one can be sent it too.
+         */
+        private CachedResponse share(Acteur acteur, ResponseImpl response, HttpResponse httpResponse) {
+            if (flight == null || !response.isSelfContained()
+                    || httpResponse.getStatus().code() >= 500
+                    || httpResponse.headers().contains(HttpHeaders.Names.SET_COOKIE)) {
+                return null;
+            }
+            String msg = response.getMessage();
+            return new CachedResponse(httpResponse, msg == null ? new byte[0]
+                    : msg.getBytes(CharsetUtil.UTF_8), acteur);
+        }
+
+        /**
+         * Run the next acteur of the current page, and those after it for as
+         * long as they are non-blocking and do not add to the context.
+         *
+         * @return true if the chain of acteurs for this page is done
+         */
+        @SuppressWarnings("try")
+        private boolean step() throws Exception {
+            try (AutoCloseable ac = scope.enter(context.toArray())) {
+                // Acteurs write directly into this response
+                ResponseImpl.setCurrent(response);
+                for (;;) {
+                    if (replayed()) {
+                        // Re-enter the scope with the cached context
+                        return false;
+                    }
+                    Class<?> type = page.acteurType(index);
+                    int modifications = response.modifications();
+                    Acteur acteur = page.getActeur(index++);
+                    if (!runActeur(acteur)) {
+                        remember(type, modifications);
+                        return deferred == null && index >= acteurCount;
+                    }
+                    if (index >= acteurCount) {
+                        return true;
+                    }
+                    if (!page.isNonBlocking(index) || expired()
+                            || (!admitted && !page.isPredicate(index))) {
+                        return false;
+                    }
+                }
+            } catch (ThreadDeath | OutOfMemoryError e) {
+                throw e;
+            } catch (Exception | Error e) {
+                failed(e);
+                return true;
+            } finally {
+                // Clear the current page ThreadLocal
+                Page.clear();
+                ResponseImpl.setCurrent(null);
+            }
+        }
+
+        /**
+         * Skip the next acteur if it is memoized and its context for this
+         * request is cached, adding the context instead.
+         *
+         * @return true if the acteur was skipped
+         */
+        private boolean replayed() {
+            // Never skip the last one, which is expected to respond
+            if (warmUp || index >= acteurCount - 1) {
+                return false;
+            }
+            Class<?> type = page.acteurType(index);
+            String key = type == null ? null : ActeurCache.key(type, event);
+            Object[] ctx = key == null ? null : acteurCache.get(type, key);
+            if (ctx == null) {
+                return false;
+            }
+            index++;
+            lastState = State.CONTINUE;
+            for (Object o : ctx) {
+                context.add(o);
+            }
+            return true;
+        }
+
+        /**
+         * Cache the context produced by a memoized acteur which just ran,
+         * unless it also set something on the response, which replaying
+         * its context would lose.
+         *
+         * @param modifications The response's modification count before
+         * the acteur was created
+         */
+        private void remember(Class<?> type, int modifications) {
+            if (warmUp || type == null || deferred != null || lastState.isRejected()
+                    || index >= acteurCount || response.modifications() != modifications) {
+                return;
+            }
+            String key = ActeurCache.key(type, event);
+            Object[] ctx = lastState.getContext();
+            if (key != null && ctx != null && ctx.length > 0) {
+                acteurCache.put(type, key, ctx);
+            }
+        }
+
+        /**
+         * Pick up the result of a DeferredState once its future is done.
+         *
+         * @return true if the chain of acteurs for this page is done
+         */
+        private boolean resume() {
+            disarm();
+            ListenableFuture<?> future = deferred;
+            deferred = null;
+            try {
+                Object result = Uninterruptibles.getUninterruptibly(future);
+                if (result != null) {
+                    context.add(result);
+                }
+                return index >= acteurCount;
+            } catch (ExecutionException e) {
+                failed(e.getCause() == null ? e : e.getCause());
+            } catch (CancellationException e) {
+                failed(e);
+            } finally {
+                Page.clear();
+            }
+            return true;
+        }
+
+        private boolean expired() {
+            return timedOut || !channel.isOpen()
+                    || (deadline != 0 && System.nanoTime() - deadline >= 0);
+        }
+
+        /**
+         * Stop work on the request if the client has gone away or the page's
+         * deadline has passed - silently in the first case, with a 503 in the
+         * second.
+         *
+         * @return true if the request is finished
+         */
+        private boolean abandoned() {
+            if (!expired()) {
+                return false;
+            }
+            disarm();
+            cancelDeferred();
+            deferred = null;
+            int skipped = acteurCount - index;
+            if (!channel.isOpen()) {
+                cancellations.disconnected(skipped);
+                land(null);
+                done();
+                return true;
+            }
+            cancellations.timedOut(skipped);
+            // Nothing the page's acteurs set so far belongs in the 503
+            response.reset();
+            Page.set(page);
+            try {
+                Acteur timeout = Acteur.timedOut(page);
+                lastActeur = timeout;
+                lastState = timeout.getState();
+                response.merge(timeout.ownResponse());
+            } finally {
+                Page.clear();
+            }
+            finishPage();
+            return true;
+        }
+
+        /**
+         * Cancel a pending deferred state's future if the client disconnects
+         * or the deadline passes while it runs.
+         */
+        private void arm() {
+            channel.closeFuture().addListener(onClose);
+            if (deadline != 0) {
+                long remaining = deadline - System.nanoTime();
+                try {
+                    deadlineTimer = channel.eventLoop().schedule(onDeadline,
+                            Math.max(0, remaining), TimeUnit.NANOSECONDS);
+                } catch (UnsupportedOperationException e) {
+                    // An embedded channel, as WarmUp uses, cannot schedule;
+                    // the deadline is still checked once the future is done
+                }
+            }
+        }
+
+        private void disarm() {
+            channel.closeFuture().removeListener(onClose);
+            ScheduledFuture<?> timer = deadlineTimer;
+            deadlineTimer = null;
+            if (timer != null) {
+                timer.cancel(false);
+            }
+        }
+
+        private void cancelDeferred() {
+            ListenableFuture<?> future = deferred;
+            if (future != null && future.cancel(true)) {
+                cancellations.cancelledFuture();
+            }
+        }
+
+        private void failed(Throwable e) {
+            Page.set(page);
+            Acteur err = Acteur.error(page, e);
+            lastActeur = err;
+            lastState = err.getState();
+            response.merge(err.ownResponse());
+            application.onError(e);
+        }
+
+        /**
+         * Run one acteur.
+         *
+         * @return true if the next acteur may be run within the same scope
+         * entry, false if the chain is done or the scope needs re-entering
+         */
+        private boolean runActeur(Acteur acteur) {
+            // Set the Page ThreadLocal, for things that will call Page.get()
+            Page.set(page);
+            // Headers the acteur set before the chain started
+            response.merge(acteur.ownResponse());
+            State state = acteur.getState();
+            // Null is not permitted - broken Acteur implementation didn't
+            // call setState() in its constructor or didn't override getState(),
+            // or overrode it to return null
+            if (state == null) {
+                NullPointerException npe = new NullPointerException(acteur + " returns null from getState(), which is not permitted");
+                if (acteur.creationStackTrace != null) {
+                    npe.addSuppressed(acteur.creationStackTrace);
+                }
+                throw npe;
+            }
+            lastActeur = acteur;
+            lastState = state;
+            if (state.isRejected()) {
+                // Skip the rest of the chain
+                index = acteurCount;
+                return false;
+            }
+            if (state.getDeferred() != null) {
+                // The caller will resume the chain when it is done
+                deferred = state.getDeferred();
+                return false;
+            }
+            Object[] ctx = state.getContext();
+            if (ctx != null && ctx.length > 0) {
+                for (Object o : ctx) {
+                    context.add(o);
+                }
+                return false;
+            }
+            return true;
+        }
+
+        /**
+         * Called when a page's chain is done; sends the response if there is
+         * one, or clears the page so the next one will be tried.
+         *
+         * @return true if the request is finished
+         */
+        private boolean finishPage() {
+            Acteur acteur = lastState.getActeur() == null ? lastActeur : lastState.getActeur();
+            if (debug && response.isModified() && response.status != null) {
+                response.add(Headers.stringHeader("X-Acteur"), acteur.getClass().getName());
+                response.add(Headers.stringHeader("X-Page"), page.getClass().getName());
+            }
+            return send(acteur, lastState, response);
         }
 
         @Override
         public void receive(Acteur acteur, State state, ResponseImpl response) {
+            // Only called by pages which run their own chain
+            if (!send(acteur, state, response)) {
+                submit(exe);
+            }
+        }
+
+        private boolean send(Acteur acteur, State state, ResponseImpl response) {
             if (response.isModified() && response.status != null) {
+                // Canonical states leave the page to the chain running them
+                Page lockedPage = state.getLockedPage() == null ? page : state.getLockedPage();
                 // Actually send the response
                 try {
                     // Abort if the client disconnected
                     if (!channel.isOpen()) {
-                        latch.countDown();
-                        return;
+                        land(null);
+                        done();
+                        return true;
                     }
                     // Create a netty response
                     HttpResponse httpResponse = response.toResponse();
+                    // Identical requests waiting on this one get their own
+                    // copy, decorated for them
+                    CachedResponse shared = share(acteur, response, httpResponse);
                     // Allow the application to add headers
-                    httpResponse = application.decorateResponse(event, state.getLockedPage(), acteur, httpResponse);
+                    httpResponse = application.decorateResponse(event, lockedPage, acteur, httpResponse);
 
                     // Allow the page to add headers
-                    state.getLockedPage().decorateResponse(event, acteur, httpResponse);
+                    lockedPage.decorateResponse(event, acteur, httpResponse);
+                    // Let identical requests waiting on this one have it
+                    land(httpResponse.headers().contains(HttpHeaders.Names.SET_COOKIE) ? null : shared);
                     // Abort if the client disconnected
                     if (!channel.isOpen()) {
-                        latch.countDown();
-                        return;
+                        done();
+                        return true;
                     }
 
                     try {
@@ -142,11 +972,13 @@ final class PagesImpl implements Pages {
                                 ? ChannelFutureListener.CLOSE : null;
 
                         // Give the application a last chance to do something
-                        application.onBeforeRespond(id, event, response.getResponseCode());
+                        if (!warmUp) {
+                            application.onBeforeRespond(id, event, response.getResponseCode());
+                        }
                         // Send the response
                         response.sendMessage(event, fut, httpResponse, closer);
                     } finally {
-                        latch.countDown();
+                        done();
                     }
                 } catch (ThreadDeath | OutOfMemoryError ee) {
                     Exceptions.chuck(ee);
@@ -154,27 +986,23 @@ final class PagesImpl implements Pages {
                     e.printStackTrace();
                     application.onError(e);
                     // Send an error message
-                    Acteur err = Acteur.error(state.getLockedPage(), e);
-                    // XXX this might recurse badly
-                    receive(err, err.getState(), err.getResponse());
-                }
-            } else {
-                // Do we have more pages?
-                if (pages.hasNext()) {
+                    Page.set(lockedPage);
+                    Acteur err;
                     try {
-                        call();
-                    } catch (Exception ex) {
-                        application.onError(ex);
-                    }
-                } else {
-                    // Otherwise, we're done - no page handled the request
-                    try {
-                        application.send404(id, event, channel);
+                        err = Acteur.error(lockedPage, e);
                     } finally {
-                        latch.countDown();
+                        Page.clear();
                     }
+                    // XXX this might recurse badly
+                    return send(err, err.getState(), err.getResponse());
                 }
+                return true;
             }
+            // Not handled - the next page, if any, gets a chance
+            routeOnly &= PredicateActeur.isRouteOnly(acteur);
+            land(null);
+            page = null;
+            return false;
         }
 
         @Override
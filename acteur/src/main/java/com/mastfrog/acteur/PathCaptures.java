@@ -0,0 +1,122 @@
+/* 
+ * The MIT License
+ *
+ * Copyright 2013 Tim Boudreau.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.mastfrog.acteur;
+
+import com.google.common.base.Optional;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Path elements captured by a pattern passed to
+ * {@link ActeurFactory#matchPathPattern(java.lang.String...)}, available
+ * for injection into subsequent Acteurs in the chain.  Captures declared
+ * as <code>{name:int}</code> or <code>{name:long}</code> have already been
+ * parsed and validated.
+ *
+ * @author Tim Boudreau
+ */
+public final class PathCaptures {
+
+    static final PathCaptures EMPTY = new PathCaptures(new String[0], new String[0], new Object[0]);
+    private final String[] names;
+    private final String[] text;
+    private final Object[] values;
+
+    PathCaptures(String[] names, String[] text, Object[] values) {
+        this.names = names;
+        this.text = text;
+        this.values = values;
+    }
+
+    private int indexOf(String name) {
+        for (int i = 0; i < names.length; i++) {
+            if (names[i].equals(name)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Get the text of a captured path element.
+     *
+     * @param name The name in the pattern
+     * @return The path element, or null if there is no such capture
+     */
+    public String get(String name) {
+        int ix = indexOf(name);
+        return ix < 0 ? null : text[ix];
+    }
+
+    /**
+     * Get the value of a capture, which will be an Integer or Long if the
+     * pattern specified a type, and a String otherwise.
+     *
+     * @param name The name in the pattern
+     * @return The value, or null if there is no such capture
+     */
+    public Object getValue(String name) {
+        int ix = indexOf(name);
+        return ix < 0 ? null : values[ix];
+    }
+
+    public Optional<Integer> getInt(String name) {
+        Object value = getValue(name);
+        if (value instanceof Integer) {
+            return Optional.of((Integer) value);
+        } else if (value instanceof Long && (Long) value <= Integer.MAX_VALUE && (Long) value >= Integer.MIN_VALUE) {
+            return Optional.of(((Long) value).intValue());
+        }
+        return Optional.absent();
+    }
+
+    public Optional<Long> getLong(String name) {
+        Object value = getValue(name);
+        if (value instanceof Number) {
+            return Optional.of(((Number) value).longValue());
+        }
+        return Optional.absent();
+    }
+
+    public List<String> names() {
+        return Collections.unmodifiableList(Arrays.asList(names));
+    }
+
+    public int size() {
+        return names.length;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder("{");
+        for (int i = 0; i < names.length; i++) {
+            if (i > 0) {
+                sb.append(", ");
+            }
+            sb.append(names[i]).append('=').append(text[i]);
+        }
+        return sb.append('}').toString();
+    }
+}
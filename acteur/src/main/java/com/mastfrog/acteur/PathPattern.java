@@ -0,0 +1,217 @@
+/* 
+ * The MIT License
+ *
+ * Copyright 2013 Tim Boudreau.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.mastfrog.acteur;
+
+import com.mastfrog.url.Path;
+import com.mastfrog.util.ConfigurationError;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A compiled, segment-aware path pattern such as
+ * <code>users/*&#47;items/{id:long}</code>, which is matched by comparing
+ * path elements rather than by converting the path to a string and running
+ * a regular expression over it.  Elements may be:
+ * <ul>
+ * <li>A literal, which must equal the path element</li>
+ * <li><code>*</code>, which matches any single element</li>
+ * <li><code>{name}</code>, which matches any single element and captures it
+ * as a string</li>
+ * <li><code>{name:int}</code> or <code>{name:long}</code>, which match and
+ * capture only elements which are decimal numbers of that type</li>
+ * <li><code>**</code>, only as the last element, which matches any number
+ * (including zero) of remaining elements</li>
+ * </ul>
+ *
+ * @author Tim Boudreau
+ */
+final class PathPattern {
+
+    private static final int LITERAL = 0;
+    private static final int ANY = 1;
+    private static final int STRING = 2;
+    private static final int INT = 3;
+    private static final int LONG = 4;
+
+    private final String pattern;
+    private final int[] kinds;
+    private final String[] literals;
+    private final int[] captureIndices;
+    private final String[] names;
+    private final boolean remainder;
+
+    private PathPattern(String pattern, int[] kinds, String[] literals, int[] captureIndices, String[] names, boolean remainder) {
+        this.pattern = pattern;
+        this.kinds = kinds;
+        this.literals = literals;
+        this.captureIndices = captureIndices;
+        this.names = names;
+        this.remainder = remainder;
+    }
+
+    static PathPattern compile(String pattern) {
+        List<String> elements = new ArrayList<>();
+        for (String element : pattern.split("/")) {
+            if (!element.isEmpty()) {
+                elements.add(element);
+            }
+        }
+        boolean remainder = !elements.isEmpty() && "**".equals(elements.get(elements.size() - 1));
+        if (remainder) {
+            elements.remove(elements.size() - 1);
+        }
+        int[] kinds = new int[elements.size()];
+        String[] literals = new String[elements.size()];
+        List<Integer> captureIndices = new ArrayList<>();
+        List<String> names = new ArrayList<>();
+        for (int i = 0; i < kinds.length; i++) {
+            String element = elements.get(i);
+            if ("**".equals(element)) {
+                throw new ConfigurationError("** may only be the last element of '" + pattern + "'");
+            } else if ("*".equals(element)) {
+                kinds[i] = ANY;
+            } else if (element.startsWith("{") && element.endsWith("}")) {
+                String name = element.substring(1, element.length() - 1);
+                int colon = name.indexOf(':');
+                kinds[i] = STRING;
+                if (colon >= 0) {
+                    String type = name.substring(colon + 1);
+                    name = name.substring(0, colon);
+                    switch (type) {
+                        case "int":
+                            kinds[i] = INT;
+                            break;
+                        case "long":
+                            kinds[i] = LONG;
+                            break;
+                        case "string":
+                            break;
+                        default:
+                            throw new ConfigurationError("Unknown capture type '" + type + "' in '" + pattern + "'");
+                    }
+                }
+                if (name.isEmpty() || names.contains(name)) {
+                    throw new ConfigurationError("Missing or duplicate capture name in '" + pattern + "'");
+                }
+                captureIndices.add(i);
+                names.add(name);
+            } else {
+                kinds[i] = LITERAL;
+                literals[i] = element;
+            }
+        }
+        int[] indices = new int[captureIndices.size()];
+        for (int i = 0; i < indices.length; i++) {
+            indices[i] = captureIndices.get(i);
+        }
+        return new PathPattern(pattern, kinds, literals, indices,
+                names.toArray(new String[names.size()]), remainder);
+    }
+
+    /**
+     * Match a path.
+     *
+     * @param path The path
+     * @return The captured elements, or null if the path does not match
+     */
+    PathCaptures match(Path path) {
+        int size = path.size();
+        if (remainder ? size < kinds.length : size != kinds.length) {
+            return null;
+        }
+        // Check literals and number formats first so a mismatch allocates
+        // nothing;  elements are compared and captured as their unescaped
+        // text, which PathElement.toString() would escape into a new string
+        for (int i = 0; i < kinds.length; i++) {
+            switch (kinds[i]) {
+                case LITERAL:
+                    if (!literals[i].equals(path.getElement(i).unescaped())) {
+                        return null;
+                    }
+                    break;
+                case INT:
+                case LONG:
+                    if (!isNumber(path.getElement(i).unescaped(), kinds[i] == INT)) {
+                        return null;
+                    }
+                    break;
+                default:
+                    break;
+            }
+        }
+        if (names.length == 0) {
+            return PathCaptures.EMPTY;
+        }
+        String[] text = new String[names.length];
+        Object[] values = new Object[names.length];
+        for (int i = 0; i < names.length; i++) {
+            int ix = captureIndices[i];
+            text[i] = path.getElement(ix).unescaped();
+            switch (kinds[ix]) {
+                case INT:
+                    values[i] = Integer.valueOf(text[i]);
+                    break;
+                case LONG:
+                    values[i] = Long.valueOf(text[i]);
+                    break;
+                default:
+                    values[i] = text[i];
+            }
+        }
+        return new PathCaptures(names, text, values);
+    }
+
+    private static boolean isNumber(String s, boolean isInt) {
+        int len = s.length();
+        int start = len > 0 && s.charAt(0) == '-' ? 1 : 0;
+        // Anything shorter than the type's maximum digits cannot overflow
+        int safeDigits = isInt ? 9 : 18;
+        if (len == start || len - start > safeDigits + 1) {
+            return false;
+        }
+        for (int i = start; i < len; i++) {
+            char c = s.charAt(i);
+            if (c < '0' || c > '9') {
+                return false;
+            }
+        }
+        if (len - start > safeDigits) {
+            try {
+                if (isInt) {
+                    Integer.parseInt(s);
+                } else {
+                    Long.parseLong(s);
+                }
+            } catch (NumberFormatException e) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public String toString() {
+        return pattern;
+    }
+}
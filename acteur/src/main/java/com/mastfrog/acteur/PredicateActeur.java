@@ -0,0 +1,53 @@
+/* 
+ * The MIT License
+ *
+ * Copyright 2013 Tim Boudreau.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.mastfrog.acteur;
+
+/**
+ * Base class for acteurs which only examine the request and either reject
+ * it or let the chain continue, and never respond to it themselves.  Since
+ * such an acteur cannot end a chain with a response, the framework can
+ * reason about pages which begin with them - for example, to skip a page
+ * whose leading predicates exclude the request's HTTP method.
+ *
+ * @author Tim Boudreau
+ */
+@NonBlocking
+abstract class PredicateActeur extends Acteur {
+
+    /**
+     * Whether this acteur decides using nothing but the request's method
+     * and path, so that a request which every page rejected with such an
+     * acteur will always be a 404, and its response may be cached.
+     *
+     * @return true if only the method and path are examined
+     */
+    boolean isRouteOnly() {
+        return false;
+    }
+
+    static boolean isRouteOnly(Acteur acteur) {
+        return acteur instanceof ActeurFactory.MatchMethods
+                || (acteur instanceof PredicateActeur && ((PredicateActeur) acteur).isRouteOnly());
+    }
+}
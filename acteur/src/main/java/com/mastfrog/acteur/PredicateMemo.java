@@ -0,0 +1,143 @@
+/* 
+ * The MIT License
+ *
+ * Copyright 2013 Tim Boudreau.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.mastfrog.acteur;
+
+import com.mastfrog.giulius.Dependencies;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Per-request record of the outcomes of the standard predicates created by
+ * {@link ActeurFactory}, so that a test such as <code>matchMethods(GET)</code>
+ * or <code>requireParameters("id")</code> which appears in many pages is
+ * evaluated once per request rather than once per page.  Predicates are
+ * identified by what they test and their arguments, not by instance, so
+ * identical predicates created by different pages share an outcome.
+ * <p/>
+ * One is created for each request and is in the request scope wherever the
+ * acteurs of the pages tried for it run;  there is no reason for application
+ * code to use it.
+ *
+ * @author Tim Boudreau
+ */
+public final class PredicateMemo {
+
+    private static final Object NULL = new Object();
+    private final Map<Object, Object> outcomes = new HashMap<>();
+    private int evaluations;
+
+    PredicateMemo() {
+    }
+
+    /**
+     * Get the number of tests actually run for this request, as opposed to
+     * answered from the memo.
+     *
+     * @return A count
+     */
+    synchronized int evaluations() {
+        return evaluations;
+    }
+
+    private synchronized Object get(Object key) {
+        return outcomes.get(key);
+    }
+
+    private synchronized void put(Object key, Object value) {
+        outcomes.put(key, value);
+        evaluations++;
+    }
+
+    /**
+     * A test of the current request whose result depends only on the
+     * request and on the arguments it was created with.
+     *
+     * @param <T> The result type
+     */
+    abstract static class Test<T> {
+
+        private final Key key;
+
+        Test(String name, Object... args) {
+            key = new Key(name, args.clone());
+        }
+
+        protected abstract T test(Event event);
+
+        /**
+         * Get the outcome of this test for the current request, computing it
+         * if no equal test has been run for this request yet.
+         *
+         * @param deps The dependencies, to look up the request scope contents
+         * @return The result
+         */
+        @SuppressWarnings("unchecked")
+        final T get(Dependencies deps) {
+            PredicateMemo memo = deps.getInstance(PredicateMemo.class);
+            Object result = memo.get(key);
+            if (result == null) {
+                result = test(deps.getInstance(Event.class));
+                memo.put(key, result == null ? NULL : result);
+            }
+            return result == NULL ? null : (T) result;
+        }
+    }
+
+    private static final class Key {
+
+        private final String name;
+        private final Object[] args;
+        private final int hashCode;
+
+        Key(String name, Object[] args) {
+            this.name = name;
+            this.args = args;
+            this.hashCode = 31 * name.hashCode() + Arrays.deepHashCode(args);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (o == this) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) o;
+            return hashCode == other.hashCode && name.equals(other.name)
+                    && Arrays.deepEquals(args, other.args);
+        }
+
+        @Override
+        public int hashCode() {
+            return hashCode;
+        }
+
+        @Override
+        public String toString() {
+            return name + Arrays.deepToString(args);
+        }
+    }
+}
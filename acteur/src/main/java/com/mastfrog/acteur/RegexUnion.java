@@ -0,0 +1,146 @@
+/* 
+ * The MIT License
+ *
+ * Copyright 2013 Tim Boudreau.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.mastfrog.acteur;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * A set of regular expressions compiled into a single alternation, so that
+ * finding which, if any, of them matches a string takes one Matcher rather
+ * than one per expression.  Each expression is wrapped in a capturing group
+ * whose index is recorded, so the group which participated in the match
+ * identifies the expression.
+ * <p/>
+ * This is only a constant-factor saving - the allocation and setup of a
+ * Matcher per expression.  <code>java.util.regex</code> backtracks, and
+ * tries each alternative against the string in turn, so the cost of a
+ * match still grows with the number of expressions;  it is not a
+ * single-pass matcher.
+ * <p/>
+ * Expressions whose meaning would change when embedded in a larger one -
+ * those using back references or quoting - cause the set to fall back to
+ * trying each expression in turn.  Either way, the result is the first
+ * expression, in the order passed, which matches the entire string.
+ *
+ * @author Tim Boudreau
+ */
+final class RegexUnion {
+
+    private static final Map<List<String>, RegexUnion> cache = new ConcurrentHashMap<>();
+    private static final Pattern UNSAFE = Pattern.compile("\\\\(?:[1-9]|k<|Q)");
+    private final String[] regexen;
+    private final Pattern[] patterns;
+    private final int[] groups;
+    private final Pattern union;
+
+    RegexUnion(String... regexen) {
+        this.regexen = regexen;
+        patterns = new Pattern[regexen.length];
+        groups = new int[regexen.length];
+        StringBuilder sb = new StringBuilder();
+        boolean combinable = regexen.length > 1;
+        int group = 1;
+        for (int i = 0; i < regexen.length; i++) {
+            patterns[i] = Pattern.compile(regexen[i]);
+            combinable &= !UNSAFE.matcher(regexen[i]).find();
+            groups[i] = group;
+            group += 1 + patterns[i].matcher("").groupCount();
+            if (i > 0) {
+                sb.append('|');
+            }
+            sb.append('(').append(regexen[i]).append(')');
+        }
+        Pattern u = null;
+        if (combinable) {
+            try {
+                u = Pattern.compile(sb.toString());
+                // Sanity check that the groups are where we expect them
+                if (u.matcher("").groupCount() != group - 1) {
+                    u = null;
+                }
+            } catch (PatternSyntaxException e) {
+                u = null;
+            }
+        }
+        union = u;
+    }
+
+    /**
+     * Get the (cached) union of a set of regular expressions - pages are
+     * usually constructed per-request, so this avoids recompiling.
+     *
+     * @param regexen The expressions
+     * @return A union
+     */
+    static RegexUnion get(String... regexen) {
+        List<String> key = Arrays.asList(regexen);
+        RegexUnion result = cache.get(key);
+        if (result == null) {
+            result = new RegexUnion(regexen.clone());
+            cache.put(Arrays.asList(result.regexen), result);
+        }
+        return result;
+    }
+
+    boolean isCombined() {
+        return union != null;
+    }
+
+    /**
+     * Find the first expression which matches the entire passed string.
+     *
+     * @param s A string
+     * @return The index of the expression, or -1 if none matches
+     */
+    int indexOf(CharSequence s) {
+        if (union != null) {
+            Matcher m = union.matcher(s);
+            if (m.matches()) {
+                for (int i = 0; i < groups.length; i++) {
+                    if (m.start(groups[i]) >= 0) {
+                        return i;
+                    }
+                }
+            }
+            return -1;
+        }
+        for (int i = 0; i < patterns.length; i++) {
+            if (patterns[i].matcher(s).matches()) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    @Override
+    public String toString() {
+        return Arrays.toString(regexen);
+    }
+}
@@ -0,0 +1,182 @@
+/* 
+ * The MIT License
+ *
+ * Copyright 2013 Tim Boudreau.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.mastfrog.acteur;
+
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
+import com.google.inject.Singleton;
+import com.mastfrog.acteur.util.HeaderValueType;
+import com.mastfrog.acteur.util.Method;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Tracks the requests to {@link Coalesce &#064;Coalesce} pages which are
+ * currently running, so that identical ones which arrive meanwhile can wait
+ * for their response instead of running the page themselves.
+ *
+ * @author Tim Boudreau
+ */
+@Singleton
+public final class RequestCoalescer {
+
+    private static final ClassValue<Coalesce> ANNOTATIONS = new ClassValue<Coalesce>() {
+        @Override
+        protected Coalesce computeValue(Class<?> type) {
+            return type.getAnnotation(Coalesce.class);
+        }
+    };
+    // Headers identifying the client, which are always part of the key
+    private static final String[] CREDENTIALS = {"Authorization", "Proxy-Authorization", "Cookie"};
+    private final ConcurrentMap<String, SettableFuture<CachedResponse>> flights
+            = new ConcurrentHashMap<>();
+    private final AtomicLong led = new AtomicLong();
+    private final AtomicLong merged = new AtomicLong();
+    private final AtomicLong fallbacks = new AtomicLong();
+
+    /**
+     * Requests which ran a coalescing page while others could wait for them.
+     *
+     * @return A count
+     */
+    public long getLed() {
+        return led.get();
+    }
+
+    /**
+     * Requests answered with a copy of another request's response.
+     *
+     * @return A count
+     */
+    public long getMerged() {
+        return merged.get();
+    }
+
+    /**
+     * Requests which waited for another, but then had to run the page
+     * themselves because its response could not be shared.
+     *
+     * @return A count
+     */
+    public long getFallbacks() {
+        return fallbacks.get();
+    }
+
+    /**
+     * Get the number of requests currently running which others may wait on.
+     *
+     * @return The number of requests
+     */
+    public int inFlight() {
+        return flights.size();
+    }
+
+    /**
+     * Compute the key identical requests to a page share, or null if the page
+     * does not coalesce requests or the request cannot be coalesced.
+     */
+    static String key(Page page, Event event) {
+        Coalesce c = ANNOTATIONS.get(page.getClass());
+        if (c == null || (event.getMethod() != Method.GET && event.getMethod() != Method.HEAD)) {
+            return null;
+        }
+        StringBuilder sb = new StringBuilder(page.getClass().getName())
+                .append(' ').append(event.getMethod())
+                .append(' ').append(event.getPath());
+        if (c.parameters().length == 0) {
+            // Sort them, so the order in the URL does not matter
+            for (Map.Entry<String, String> e : new TreeMap<>(event.getParametersAsMap()).entrySet()) {
+                sb.append('\n').append(e.getKey()).append('=').append(e.getValue());
+            }
+        } else {
+            for (String p : c.parameters()) {
+                sb.append('\n').append(p).append('=').append(event.getParameter(p));
+            }
+        }
+        for (String h : c.headers()) {
+            sb.append('\n').append(h).append(": ").append(event.getHeader(h));
+        }
+        // Never share a response built for one client's identity with another
+        for (String h : CREDENTIALS) {
+            String value = event.getHeader(h);
+            if (value != null) {
+                sb.append('\n').append(h).append(": ").append(value);
+            }
+        }
+        List<HeaderValueType<?>> vary = new ArrayList<>(2);
+        page.getReponseHeaders().getVaryHeaders(vary);
+        for (HeaderValueType<?> h : vary) {
+            sb.append('\n').append(h.name()).append(": ").append(event.getHeader(h.name()));
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Join the request in progress for a key, or become it.
+     *
+     * @param key The key
+     * @param mine The future the caller will complete if it is the first
+     * @return The future of the request already in progress, or null if the
+     * caller is now the one running the page
+     */
+    ListenableFuture<CachedResponse> join(String key, SettableFuture<CachedResponse> mine) {
+        SettableFuture<CachedResponse> existing = flights.putIfAbsent(key, mine);
+        if (existing == null) {
+            led.incrementAndGet();
+        }
+        return existing;
+    }
+
+    /**
+     * Release the requests waiting on a key.
+     *
+     * @param key The key
+     * @param mine The future passed to join()
+     * @param response The response to send them, or null if they should run
+     * the page themselves
+     */
+    void land(String key, SettableFuture<CachedResponse> mine, CachedResponse response) {
+        flights.remove(key, mine);
+        mine.set(response);
+    }
+
+    void merged() {
+        merged.incrementAndGet();
+    }
+
+    void fellBack() {
+        fallbacks.incrementAndGet();
+    }
+
+    @Override
+    public String toString() {
+        return "RequestCoalescer{inFlight=" + inFlight() + ", led=" + led
+                + ", merged=" + merged + ", fallbacks=" + fallbacks + '}';
+    }
+}
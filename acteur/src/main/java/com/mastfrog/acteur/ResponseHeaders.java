@@ -55,8 +55,31 @@ public class ResponseHeaders {
     private ContentLengthProvider contentLengthProvider;
     private ETagProvider etagProvider;
     private DateTime expires;
+    private boolean frozen;
+    private CacheControl frozenCacheControl;
+
+    /**
+     * Make these headers immutable, so they can be shared by all requests
+     * to a {@link SharedPage}.
+     */
+    void freeze() {
+        frozenCacheControl = getCacheControl();
+        frozen = true;
+    }
+
+    boolean isFrozen() {
+        return frozen;
+    }
+
+    private void checkNotFrozen() {
+        if (frozen) {
+            throw new IllegalStateException("Headers of a shared page cannot "
+                    + "be modified after it is constructed");
+        }
+    }
 
     public void setExpires(DateTime expires) {
+        checkNotFrozen();
         this.expires = expires;
     }
 
@@ -65,46 +88,57 @@ public class ResponseHeaders {
     }
 
     public void addVaryHeader(HeaderValueType<?> header) {
+        checkNotFrozen();
         varyHeaders.add(header);
     }
 
     public void addCacheControl(CacheControlTypes type, Duration value) {
+        checkNotFrozen();
         cacheControl.add(type, value);
     }
 
     public void addCacheControl(CacheControlTypes type) {
+        checkNotFrozen();
         cacheControl.add(type);
     }
 
     public void setAge(Duration age) {
+        checkNotFrozen();
         this.age = age;
     }
 
     public void setContentLocation(URI contentLocation) {
+        checkNotFrozen();
         this.contentLocation = contentLocation;
     }
 
     public void setContentType(MediaType contentType) {
+        checkNotFrozen();
         this.contentType = contentType;
     }
 
     public void setEtag(String etag) {
+        checkNotFrozen();
         this.etag = etag;
     }
 
     public void setLastModified(DateTime lastModified) {
+        checkNotFrozen();
         this.lastModified = lastModified;
     }
 
     public void setLocale(Locale locale) {
+        checkNotFrozen();
         this.locale = locale;
     }
 
     public void setLocation(URI location) {
+        checkNotFrozen();
         this.location = location;
     }
 
     public void setMaxAge(Duration maxAge) {
+        checkNotFrozen();
         this.maxAge = maxAge;
     }
 
@@ -135,6 +169,7 @@ public class ResponseHeaders {
     }
 
     public void setContentLengthProvider(ContentLengthProvider provider) {
+        checkNotFrozen();
         this.contentLengthProvider = provider;
     }
 
@@ -161,6 +196,7 @@ public class ResponseHeaders {
     }
 
     public void setETagProvider(ETagProvider provider) {
+        checkNotFrozen();
         this.etagProvider = provider;
     }
 
@@ -184,6 +220,9 @@ public class ResponseHeaders {
 
     protected String getETag() {
         if (etag == null && etagProvider != null) {
+            if (frozen) {
+                return etagProvider.getETag();
+            }
             etag = etagProvider.getETag();
         }
         return etag;
@@ -194,6 +233,9 @@ public class ResponseHeaders {
     }
 
     protected CacheControl getCacheControl() {
+        if (frozen) {
+            return frozenCacheControl;
+        }
         CacheControl result = cacheControl;
         if (result.isEmpty()) {
             Duration ma = getMaxAge();
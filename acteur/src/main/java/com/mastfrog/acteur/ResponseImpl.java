@@ -42,11 +42,11 @@ import io.netty.handler.codec.http.LastHttpContent;
 import io.netty.util.CharsetUtil;
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Collections;
 import java.util.HashSet;
-import java.util.Iterator;
-import java.util.LinkedList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
 import java.util.Set;
 
 /**
@@ -57,28 +57,108 @@ import java.util.Set;
  */
 final class ResponseImpl extends Response {
 
+    private static final ThreadLocal<ResponseImpl> CURRENT = new ThreadLocal<>();
+
     private volatile boolean modified;
+    // Counts every change, so the changes made by one acteur can be seen
+    private int modifications;
     HttpResponseStatus status;
-    private final List<Entry<?>> headers = Collections.synchronizedList(new ArrayList<Entry<?>>());
+    // Headers by name, so replacing one is a hash lookup;  Set-Cookie may
+    // appear many times, so those are kept separately
+    private final Map<String, Entry<?>> headers = new LinkedHashMap<>();
+    private final List<Entry<?>> cookies = new ArrayList<>(2);
     private String message;
     ChannelFutureListener listener;
     private boolean chunked;
+    private volatile boolean frozen;
 
     ResponseImpl() {
     }
 
+    /**
+     * Make this response immutable, so it can hold the headers set by the
+     * constructor of an acteur belonging to a {@link SharedPage}.
+     */
+    void freeze() {
+        frozen = true;
+    }
+
+    private void checkNotFrozen() {
+        if (frozen) {
+            throw new IllegalStateException("Headers of an acteur of a shared "
+                    + "page cannot be modified after it is constructed");
+        }
+    }
+
     boolean isModified() {
         return modified;
     }
 
     void modify() {
+        checkNotFrozen();
         this.modified = true;
+        modifications++;
+    }
+
+    /**
+     * Get the number of changes made to this response so far; if it differs
+     * before and after an acteur runs, the acteur set something on it.
+     *
+     * @return The number of changes
+     */
+    int modifications() {
+        return modifications;
+    }
+
+    /**
+     * Return this response to its initial state, so that one instance can
+     * serve for each page tried for a request.
+     */
+    void reset() {
+        modified = false;
+        status = null;
+        synchronized (headers) {
+            headers.clear();
+            cookies.clear();
+        }
+        message = null;
+        listener = null;
+        chunked = false;
+    }
+
+    /**
+     * Set the response of the chain of acteurs currently running on this
+     * thread, which acteurs belonging to a shared page write into.
+     *
+     * @param response The response, or null to clear it
+     */
+    static void setCurrent(ResponseImpl response) {
+        if (response == null) {
+            CURRENT.remove();
+        } else {
+            CURRENT.set(response);
+        }
+    }
+
+    static ResponseImpl current() {
+        return CURRENT.get();
     }
 
+    /**
+     * Copy in the contents of an acteur's own response, if it has one -
+     * acteurs running in a chain write directly into the chain's response,
+     * so this is only needed for headers set outside of one, such as by the
+     * constructor of an acteur created with its page.
+     *
+     * @param other Another response or null
+     */
     void merge(ResponseImpl other) {
+        if (other == null || other == this) {
+            return;
+        }
         this.modified |= other.modified;
         if (other.modified) {
-            for (Entry<?> e : other.headers) {
+            for (Entry<?> e : other.entries()) {
                 addEntry(e);
             }
             if (other.status != null) {
@@ -123,8 +203,13 @@ final class ResponseImpl extends Response {
                 add (Headers.CONTENT_LENGTH, len);
             }
         }
-        for (Entry<?> e : headers) {
-            e.write(resp);
+        synchronized (headers) {
+            for (Entry<?> e : headers.values()) {
+                e.write(resp);
+            }
+            for (Entry<?> e : cookies) {
+                e.write(resp);
+            }
         }
         if (chunked) {
             HttpHeaders.setTransferEncodingChunked(resp);
@@ -134,58 +219,84 @@ final class ResponseImpl extends Response {
         return resp;
     }
 
-    public <T> void add(HeaderValueType<T> decorator, T value) {
-        List<Entry<?>> old = new LinkedList<>();
-        // XXX set cookie!
-        for (Iterator<Entry<?>> it = headers.iterator(); it.hasNext();) {
-            Entry<?> e = it.next();
-            if (e.decorator.equals(Headers.SET_COOKIE)) {
-                continue;
-            }
-            if (e.match(decorator) != null) {
-                old.add(e);
-                it.remove();
-            }
+    private List<Entry<?>> entries() {
+        synchronized (headers) {
+            List<Entry<?>> result = new ArrayList<>(headers.size() + cookies.size());
+            result.addAll(headers.values());
+            result.addAll(cookies);
+            return result;
         }
+    }
+
+    public <T> void add(HeaderValueType<T> decorator, T value) {
+        checkNotFrozen();
         Entry<?> e = new Entry<>(decorator, value);
-        // For now, special handling for Allow:
-        // Longer term, should HeaderValueType.isArray() and a way to 
-        // coalesce
-        if (!old.isEmpty() && decorator == Headers.ALLOW) {
-          old.add(e);
-          Set<Method> all = new HashSet<>();
-          for (Entry<?> en : old) {
-            Method[] m = (Method[]) en.value;
-            all.addAll(Arrays.asList(m));
-          }
-          value = (T) all.toArray(new Method[0]);
-          e = new Entry<>(decorator, value);
+        synchronized (headers) {
+            if (decorator.name().equalsIgnoreCase(Headers.SET_COOKIE.name())) {
+                cookies.add(e);
+            } else {
+                // Replaces a header with the same name and value type, as
+                // Entry.match() does, but not one with a different type
+                String key = key(decorator);
+                Entry<?> old = headers.put(key, e);
+                // For now, special handling for Allow:
+                // Longer term, should HeaderValueType.isArray() and a way to
+                // coalesce
+                if (old != null && decorator == Headers.ALLOW && old.match(decorator) != null) {
+                    Set<Method> all = new HashSet<>();
+                    all.addAll(Arrays.asList((Method[]) old.value));
+                    all.addAll(Arrays.asList((Method[]) value));
+                    headers.put(key, new Entry<>(Headers.ALLOW, all.toArray(new Method[all.size()])));
+                }
+            }
         }
-        headers.add(e);
         modify();
     }
 
     public <T> T get(HeaderValueType<T> decorator) {
-        for (Entry<?> e : headers) {
-            HeaderValueType<T> d = e.match(decorator);
-            if (d != null) {
-                return d.type().cast(e.value);
+        Entry<?> e;
+        synchronized (headers) {
+            e = headers.get(key(decorator));
+            if (e == null && !cookies.isEmpty() && decorator.name().equalsIgnoreCase(Headers.SET_COOKIE.name())) {
+                e = cookies.get(cookies.size() - 1);
             }
         }
-        return null;
+        HeaderValueType<T> d = e == null ? null : e.match(decorator);
+        return d == null ? null : d.type().cast(e.value);
+    }
+
+    /**
+     * Header names are case-insensitive, and headers of different types may
+     * share a name, such as the date and duration forms of Retry-After.
+     */
+    private static String key(HeaderValueType<?> decorator) {
+        return decorator.name().toLowerCase(Locale.US) + ':' + decorator.type().getName();
     }
 
     void setChunked(boolean chunked) {
+        checkNotFrozen();
         this.chunked = chunked;
         modify();
     }
 
     public void setBodyWriter(ChannelFutureListener listener) {
 //        modify();
+        checkNotFrozen();
         if (this.listener != null) {
             throw new IllegalStateException("Listener already set to " + this.listener);
         }
         this.listener = listener;
+        modifications++;
+    }
+
+    /**
+     * Determine if the entire response is the headers and the message, with
+     * no body writer or chunking, so it can be copied.
+     *
+     * @return true if the response is self-contained
+     */
+    boolean isSelfContained() {
+        return listener == null && !chunked;
     }
 
     public String getMessage() {
@@ -262,7 +373,7 @@ final class ResponseImpl extends Response {
 
     @Override
     public String toString() {
-        return "Response{" + "modified=" + modified + ", status=" + status + ", headers=" + headers + ", message=" + message + ", listener=" + listener + ", chunked=" + chunked + " has listener " + (this.listener != null) + '}';
+        return "Response{" + "modified=" + modified + ", status=" + status + ", headers=" + entries() + ", message=" + message + ", listener=" + listener + ", chunked=" + chunked + " has listener " + (this.listener != null) + '}';
     }
 
     private static final class Entry<T> {
@@ -294,12 +405,12 @@ final class ResponseImpl extends Response {
 
         @Override
         public int hashCode() {
-            return decorator.name().hashCode();
+            return decorator.name().toLowerCase(Locale.US).hashCode();
         }
 
         @Override
         public boolean equals(Object o) {
-            return o instanceof Entry<?> && ((Entry<?>) o).decorator.name().equals(decorator.name());
+            return o instanceof Entry<?> && ((Entry<?>) o).decorator.name().equalsIgnoreCase(decorator.name());
         }
 
         @SuppressWarnings({"unchecked"})
@@ -307,7 +418,7 @@ final class ResponseImpl extends Response {
             if (decorator == this.decorator) {
                 return (HeaderValueType<R>) this.decorator;
             }
-            if (this.decorator.name().equals(decorator.name())
+            if (this.decorator.name().equalsIgnoreCase(decorator.name())
                     && this.decorator.type().equals(decorator.type())) {
                 return decorator;
             }
@@ -0,0 +1,103 @@
+/* 
+ * The MIT License
+ *
+ * Copyright 2013 Tim Boudreau.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.mastfrog.acteur;
+
+import com.mastfrog.acteur.util.Method;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Annotation which can be placed on a Page subclass to statically declare
+ * which requests it can possibly respond to.  When the application starts
+ * handling requests, the routes of all pages are compiled into a table, and
+ * only pages whose routes match a request are instantiated for that request.
+ * <p/>
+ * A route only narrows down which pages are <i>tried</i> - the page's
+ * Acteurs still make the final decision, so a route must never be narrower
+ * than what the page actually responds to.  Pages without this annotation
+ * are tried for every request, as before.  A page is only indexed by method
+ * if it lists its methods here;  optionally (see
+ * {@link Application#INFER_METHODS_SETTINGS_KEY}), a page without them whose
+ * first Acteurs include one created by {@link ActeurFactory#matchMethods} is
+ * only tried for the methods that names.
+ * <p/>
+ * Path patterns are split on <code>/</code> characters and compared
+ * element-by-element against the request's path:
+ * <ul>
+ * <li><code>users</code> - matches that literal path element</li>
+ * <li><code>*</code> or <code>{name}</code> - matches any single element</li>
+ * <li><code>**</code> - as the last element only, matches zero or more
+ * remaining elements</li>
+ * </ul>
+ * So <code>&#064;Route(methods=GET, path="users/{id}")</code> matches
+ * <code>GET /users/1234</code> but not <code>PUT /users/1234</code> or
+ * <code>GET /users/1234/items</code>.
+ *
+ * @author Tim Boudreau
+ */
+@Target(value = ElementType.TYPE)
+@Retention(value = RetentionPolicy.RUNTIME)
+public @interface Route {
+
+    /**
+     * The HTTP methods the page can respond to;  if empty, any method.
+     *
+     * @return An array of methods
+     */
+    Method[] methods() default {};
+
+    /**
+     * If true, requests whose path matches this route but whose method is
+     * not one of <code>methods()</code> are answered with <i>405 Method Not
+     * Allowed</i> and an <code>Allow</code> header, without instantiating the
+     * page - the equivalent of <code>matchMethods(true, ...)</code>.
+     *
+     * @return Whether to respond with 405 to other methods
+     */
+    boolean methodNotAllowed() default false;
+
+    /**
+     * Path patterns, one of which the request path must match;  if empty,
+     * any path.
+     *
+     * @return An array of patterns
+     */
+    String[] path() default {};
+
+    /**
+     * The minimum number of elements the request path must have.
+     *
+     * @return A length
+     */
+    int minimumPathLength() default 0;
+
+    /**
+     * The maximum number of elements the request path may have.
+     *
+     * @return A length
+     */
+    int maximumPathLength() default Integer.MAX_VALUE;
+}
@@ -0,0 +1,313 @@
+/* 
+ * The MIT License
+ *
+ * Copyright 2013 Tim Boudreau.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.mastfrog.acteur;
+
+import com.mastfrog.acteur.util.Method;
+import com.mastfrog.url.Path;
+import com.mastfrog.url.PathElement;
+import com.mastfrog.util.ConfigurationError;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The compiled form of the &#064;Route annotations of all of an
+ * application's pages:  a trie of path elements plus an index of which pages
+ * accept which HTTP methods.  Looking up a request yields the indices of the
+ * pages which could possibly respond to it, in the order they were added to
+ * the application.
+ * <p/>
+ * Pages which do not declare their methods may, if the application enables
+ * it, have them inferred from a {@link ActeurFactory.MatchMethods} at the
+ * head of their chain of acteurs.
+ * A page which answers other methods with 405 remains a candidate for them,
+ * but {@link #accepts} tells the caller it need not run the page itself.
+ * <p/>
+ * Paths of pages covered by one of the application's {@link CompiledRoutes}
+ * are matched by it instead of the trie.
+ *
+ * @author Tim Boudreau
+ */
+final class RouteTable {
+
+    private final List<Class<? extends Page>> types;
+    private final Node root = new Node();
+    private final BitSet anyPath = new BitSet();
+    private final BitSet lengthConstrained = new BitSet();
+    private final BitSet shared = new BitSet();
+    private final BitSet methodNotAllowed = new BitSet();
+    private final Method[][] methods;
+    private final Map<Method, BitSet> byMethod = new EnumMap<>(Method.class);
+    private final int[] minimumLengths;
+    private final int[] maximumLengths;
+    private final CompiledRoutes[] compiled;
+    private final int[][] fromCompiled;
+    private final BitSet compiledPaths = new BitSet();
+
+    RouteTable(List<Class<? extends Page>> types) {
+        this(types, Collections.<Class<? extends Page>, ActeurFactory.MatchMethods>emptyMap());
+    }
+
+    RouteTable(List<Class<? extends Page>> types, Map<Class<? extends Page>, ActeurFactory.MatchMethods> inferred) {
+        this(types, inferred, Collections.<CompiledRoutes>emptyList());
+    }
+
+    RouteTable(List<Class<? extends Page>> types, Map<Class<? extends Page>, ActeurFactory.MatchMethods> inferred, List<? extends CompiledRoutes> compiled) {
+        this.types = new ArrayList<>(types);
+        this.compiled = compiled.toArray(new CompiledRoutes[compiled.size()]);
+        fromCompiled = new int[this.compiled.length][];
+        for (int c = 0; c < this.compiled.length; c++) {
+            List<Class<? extends Page>> compiledTypes = this.compiled[c].types();
+            fromCompiled[c] = new int[compiledTypes.size()];
+            for (int i = 0; i < fromCompiled[c].length; i++) {
+                int ix = this.types.indexOf(compiledTypes.get(i));
+                // A page already matched by another set of compiled routes
+                // is left to that one
+                fromCompiled[c][i] = ix >= 0 && !compiledPaths.get(ix) ? ix : -1;
+                if (ix >= 0) {
+                    compiledPaths.set(ix);
+                }
+            }
+        }
+        int count = types.size();
+        methods = new Method[count][];
+        minimumLengths = new int[count];
+        maximumLengths = new int[count];
+        for (Method m : Method.values()) {
+            byMethod.put(m, new BitSet(count));
+        }
+        for (int i = 0; i < count; i++) {
+            add(i, this.types.get(i), inferred.get(this.types.get(i)));
+        }
+    }
+
+    private void add(int ix, Class<? extends Page> type, ActeurFactory.MatchMethods inferred) {
+        if (type.isAnnotationPresent(SharedPage.class)) {
+            shared.set(ix);
+        }
+        Route route = type.getAnnotation(Route.class);
+        if (route != null && route.methods().length > 0) {
+            methods[ix] = route.methods();
+            methodNotAllowed.set(ix, route.methodNotAllowed());
+        } else if (inferred != null) {
+            methods[ix] = inferred.methods();
+            methodNotAllowed.set(ix, inferred.isNotSupp());
+        }
+        if (methods[ix] == null) {
+            for (BitSet set : byMethod.values()) {
+                set.set(ix);
+            }
+        } else {
+            for (Method m : methods[ix]) {
+                byMethod.get(m).set(ix);
+            }
+        }
+        if (route == null) {
+            anyPath.set(ix);
+            minimumLengths[ix] = 0;
+            maximumLengths[ix] = Integer.MAX_VALUE;
+            return;
+        }
+        if (compiledPaths.get(ix)) {
+            return;
+        }
+        if (route.path().length == 0) {
+            anyPath.set(ix);
+        } else {
+            for (String pattern : route.path()) {
+                root.add(ix, parse(type, pattern), 0);
+            }
+        }
+        minimumLengths[ix] = route.minimumPathLength();
+        maximumLengths[ix] = route.maximumPathLength();
+        if (route.minimumPathLength() > 0 || route.maximumPathLength() != Integer.MAX_VALUE) {
+            lengthConstrained.set(ix);
+        }
+    }
+
+    /**
+     * Check the &#064;Route annotation of a page type, if any, for errors.
+     *
+     * @param type A page type
+     */
+    static void validate(Class<? extends Page> type) {
+        Route route = type.getAnnotation(Route.class);
+        if (route != null) {
+            for (String pattern : route.path()) {
+                parse(type, pattern);
+            }
+            if (route.methodNotAllowed() && route.methods().length == 0) {
+                throw new ConfigurationError("methodNotAllowed is meaningless "
+                        + "without methods on " + type.getName());
+            }
+            if (route.minimumPathLength() < 0 || route.maximumPathLength() < route.minimumPathLength()) {
+                throw new ConfigurationError("Bad path length bounds "
+                        + route.minimumPathLength() + " to "
+                        + route.maximumPathLength() + " on " + type.getName());
+            }
+        }
+    }
+
+    static String[] parse(Class<?> type, String pattern) {
+        List<String> result = new ArrayList<>();
+        for (String element : pattern.split("/")) {
+            if (!element.isEmpty()) {
+                result.add(element);
+            }
+        }
+        for (int i = 0; i < result.size() - 1; i++) {
+            if ("**".equals(result.get(i))) {
+                throw new ConfigurationError("** may only be the last element "
+                        + "of a route, but found '" + pattern + "' on " + type.getName());
+            }
+        }
+        return result.toArray(new String[result.size()]);
+    }
+
+    int size() {
+        return types.size();
+    }
+
+    Class<? extends Page> type(int ix) {
+        return types.get(ix);
+    }
+
+    boolean isShared(int ix) {
+        return shared.get(ix);
+    }
+
+    /**
+     * Determine if a candidate page accepts a method, as opposed to being
+     * a candidate only in order to respond with 405.
+     *
+     * @param ix The page index
+     * @param method The method
+     * @return true if the page should be run
+     */
+    boolean accepts(int ix, Method method) {
+        return byMethod.get(method == null ? Method.UNKNOWN : method).get(ix);
+    }
+
+    /**
+     * Get the methods a page is known to accept.
+     *
+     * @param ix The page index
+     * @return The methods, or null if any
+     */
+    Method[] methods(int ix) {
+        return methods[ix] == null ? null : methods[ix].clone();
+    }
+
+    /**
+     * Find the pages which may respond to a request.
+     *
+     * @param method The request method
+     * @param path The request path
+     * @return A set of indices into the list of page types
+     */
+    BitSet candidates(Method method, Path path) {
+        BitSet result = (BitSet) anyPath.clone();
+        root.collect(path, 0, result);
+        for (int c = 0; c < compiled.length; c++) {
+            BitSet matched = new BitSet(fromCompiled[c].length);
+            compiled[c].match(path, matched);
+            for (int ix = matched.nextSetBit(0); ix >= 0; ix = matched.nextSetBit(ix + 1)) {
+                if (fromCompiled[c][ix] >= 0) {
+                    result.set(fromCompiled[c][ix]);
+                }
+            }
+        }
+        BitSet accepting = byMethod.get(method == null ? Method.UNKNOWN : method);
+        if (methodNotAllowed.isEmpty()) {
+            result.and(accepting);
+        } else {
+            for (int ix = result.nextSetBit(0); ix >= 0; ix = result.nextSetBit(ix + 1)) {
+                if (!accepting.get(ix) && !methodNotAllowed.get(ix)) {
+                    result.clear(ix);
+                }
+            }
+        }
+        if (!lengthConstrained.isEmpty()) {
+            int length = path.size();
+            for (int ix = lengthConstrained.nextSetBit(0); ix >= 0; ix = lengthConstrained.nextSetBit(ix + 1)) {
+                if (length < minimumLengths[ix] || length > maximumLengths[ix]) {
+                    result.clear(ix);
+                }
+            }
+        }
+        return result;
+    }
+
+    private static final class Node {
+
+        private final Map<PathElement, Node> literals = new HashMap<>();
+        private Node wildcard;
+        private final BitSet terminal = new BitSet();
+        private final BitSet remainder = new BitSet();
+
+        void add(int ix, String[] elements, int depth) {
+            if (depth == elements.length) {
+                terminal.set(ix);
+                return;
+            }
+            String element = elements[depth];
+            if ("**".equals(element)) {
+                remainder.set(ix);
+            } else if ("*".equals(element) || (element.startsWith("{") && element.endsWith("}"))) {
+                if (wildcard == null) {
+                    wildcard = new Node();
+                }
+                wildcard.add(ix, elements, depth + 1);
+            } else {
+                PathElement key = new PathElement(element);
+                Node child = literals.get(key);
+                if (child == null) {
+                    child = new Node();
+                    literals.put(key, child);
+                }
+                child.add(ix, elements, depth + 1);
+            }
+        }
+
+        void collect(Path path, int depth, BitSet into) {
+            into.or(remainder);
+            if (depth == path.size()) {
+                into.or(terminal);
+                return;
+            }
+            PathElement element = path.getElement(depth);
+            Node child = literals.get(element);
+            if (child != null) {
+                child.collect(path, depth + 1, into);
+            }
+            if (wildcard != null) {
+                wildcard.collect(path, depth + 1, into);
+            }
+        }
+    }
+}
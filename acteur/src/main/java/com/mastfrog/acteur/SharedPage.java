@@ -0,0 +1,55 @@
+/* 
+ * The MIT License
+ *
+ * Copyright 2013 Tim Boudreau.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.mastfrog.acteur;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Annotation for Page subclasses which should be constructed only once,
+ * rather than once per request.  The page's list of Acteurs and its
+ * {@link ResponseHeaders} are built a single time when the application's
+ * routes are compiled, and are then shared, immutably, by all requests;
+ * only Acteurs added to the page as <i>classes</i> are instantiated for
+ * each request.
+ * <p/>
+ * This removes most of the per-request garbage created by dispatching to
+ * a page, but imposes some restrictions on it:
+ * <ul>
+ * <li>Its constructor may not ask for request-scoped objects such as the
+ * {@link Event}, and the set of Acteurs may not depend on the request</li>
+ * <li>Its response headers may not be modified after construction;  Acteurs
+ * should add per-request headers to their own response instead</li>
+ * <li>Acteur <i>instances</i> added to it are called concurrently by many
+ * requests, and may not keep any per-request state in fields</li>
+ * </ul>
+ *
+ * @author Tim Boudreau
+ */
+@Target(value = ElementType.TYPE)
+@Retention(value = RetentionPolicy.RUNTIME)
+public @interface SharedPage {
+}
@@ -23,16 +23,41 @@
  */
 package com.mastfrog.acteur;
 
+import com.google.common.util.concurrent.ListenableFuture;
+
 /**
  * Represents a state of event processing.
  */
 public abstract class State {
+
+    private static final Object[] NO_CONTEXT = new Object[0];
+    /**
+     * Canonical state for an acteur which rejects the request without
+     * setting a response code.  It has no page or acteur;  the chain running
+     * the acteur supplies those.
+     */
+    static final State REJECTED = new CanonicalState(false);
+    /**
+     * Canonical state for an acteur which lets the chain continue without
+     * contributing anything to the context.
+     */
+    static final State CONTINUE = new CanonicalState(true);
+
     public boolean isRejected() {
         return !isLockedInChain() && !isConsumed();
     }
 
     Object[] getContext() {
-        return new Object[0];
+        return NO_CONTEXT;
+    }
+
+    /**
+     * The future the chain must wait for before continuing, if any.
+     *
+     * @return A future or null
+     */
+    ListenableFuture<?> getDeferred() {
+        return null;
     }
 
     State() {
@@ -71,6 +96,35 @@ public abstract class State {
      */
     protected abstract Acteur getActeur();
     
+    private static final class CanonicalState extends State {
+
+        private final boolean consumed;
+
+        CanonicalState(boolean consumed) {
+            this.consumed = consumed;
+        }
+
+        @Override
+        boolean isLockedInChain() {
+            return false;
+        }
+
+        @Override
+        boolean isConsumed() {
+            return consumed;
+        }
+
+        @Override
+        protected Page getLockedPage() {
+            return null;
+        }
+
+        @Override
+        protected Acteur getActeur() {
+            return null;
+        }
+    }
+
     @Override
     public String toString() {
         return getClass().getName() + ": " + (isConsumed() ? "consumed" : "not-consumed") + " " + (isLockedInChain() ? "locked" : "not-locked") + " action=" + getActeur() + " page=" + getLockedPage();
@@ -0,0 +1,199 @@
+/* 
+ * The MIT License
+ *
+ * Copyright 2013 Tim Boudreau.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.mastfrog.acteur;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.inject.Inject;
+import com.google.inject.Provider;
+import com.mastfrog.acteur.server.EventImpl;
+import com.mastfrog.acteur.server.PathFactory;
+import com.mastfrog.acteur.util.Method;
+import com.mastfrog.settings.Settings;
+import io.netty.buffer.ByteBufHolder;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundMessageHandlerAdapter;
+import io.netty.channel.embedded.EmbeddedMessageChannel;
+import io.netty.handler.codec.http.DefaultFullHttpRequest;
+import io.netty.handler.codec.http.HttpMethod;
+import io.netty.handler.codec.http.HttpVersion;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Runs synthetic requests through every page of an application against an
+ * embedded channel before the server binds its port, so that pages and
+ * acteurs are instantiated, Guice bindings are resolved and the request path
+ * has been JIT compiled before real traffic arrives. Only GET and HEAD
+ * requests are sent, since those should not have side effects; requests
+ * carry an <code>X-Acteur-Warmup</code> header so that pages which do
+ * anything expensive can recognize them.  Pages whose &#064;Route has no
+ * path are skipped, since there is no way to know what path they respond to.
+ * <p/>
+ * Warm-up requests are not logged, are not counted by the admission
+ * controller, do not populate the 404 or &#064;Memoized acteur caches, and
+ * run entirely on the executor, even in affinity mode.
+ * <p/>
+ * Enabled by setting <code>acteur.warmup</code> to true.
+ *
+ * @author Tim Boudreau
+ */
+public final class WarmUp {
+
+    public static final String WARMUP_SETTINGS_KEY = "acteur.warmup";
+    public static final String WARMUP_ITERATIONS_SETTINGS_KEY = "acteur.warmup.iterations";
+    public static final String WARMUP_TIMEOUT_SETTINGS_KEY = "acteur.warmup.timeout";
+    public static final String WARMUP_HEADER = "X-Acteur-Warmup";
+    private final Application application;
+    private final PathFactory paths;
+    private final Provider<ObjectMapper> mapper;
+    private final boolean enabled;
+    private final int iterations;
+    private final long timeout;
+
+    @Inject
+    WarmUp(Application application, PathFactory paths, Provider<ObjectMapper> mapper, Settings settings) {
+        this.application = application;
+        this.paths = paths;
+        this.mapper = mapper;
+        this.enabled = settings.getBoolean(WARMUP_SETTINGS_KEY, false);
+        this.iterations = settings.getInt(WARMUP_ITERATIONS_SETTINGS_KEY, 200);
+        this.timeout = settings.getInt(WARMUP_TIMEOUT_SETTINGS_KEY, 5000);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Run the warm-up requests.
+     *
+     * @return The number of requests which completed within the timeout
+     * @throws InterruptedException if interrupted
+     */
+    public int run() throws InterruptedException {
+        List<Method> methods = new ArrayList<>();
+        List<String> uris = new ArrayList<>();
+        RouteTable table = application.routes();
+        for (int i = 0; i < table.size(); i++) {
+            String uri = sampleUri(table.type(i));
+            if (uri == null) {
+                continue;
+            }
+            for (Method method : new Method[]{Method.GET, Method.HEAD}) {
+                if (table.accepts(i, method)) {
+                    methods.add(method);
+                    uris.add(uri);
+                }
+            }
+        }
+        int completed = 0;
+        long start = System.currentTimeMillis();
+        for (int i = 0; i < iterations; i++) {
+            for (int j = 0; j < uris.size(); j++) {
+                if (send(methods.get(j), uris.get(j))) {
+                    completed++;
+                }
+            }
+        }
+        Logger.getLogger(WarmUp.class.getName()).log(Level.INFO,
+                "Warm-up of {0} ran {1} requests in {2}ms",
+                new Object[]{application.getName(), completed,
+                    System.currentTimeMillis() - start});
+        return completed;
+    }
+
+    private boolean send(Method method, String uri) throws InterruptedException {
+        DefaultFullHttpRequest request = new DefaultFullHttpRequest(HttpVersion.HTTP_1_1,
+                HttpMethod.valueOf(method.name()), uri);
+        request.headers().set(WARMUP_HEADER, "true");
+        EmbeddedMessageChannel channel = new EmbeddedMessageChannel(new Discard());
+        try {
+            EventImpl event = new EventImpl(request,
+                    new InetSocketAddress("127.0.0.1", 0), channel, paths, mapper);
+            CountDownLatch latch = application.onEvent(event, channel, true);
+            boolean done = latch.await(timeout, TimeUnit.MILLISECONDS);
+            if (!done) {
+                Logger.getLogger(WarmUp.class.getName()).log(Level.WARNING,
+                        "Warm-up request {0} {1} did not complete in {2}ms",
+                        new Object[]{method, uri, timeout});
+            }
+            return done;
+        } catch (RuntimeException ex) {
+            Logger.getLogger(WarmUp.class.getName()).log(Level.WARNING,
+                    "Warm-up request " + method + " " + uri + " failed", ex);
+            return false;
+        } finally {
+            channel.runPendingTasks();
+            for (Object o = channel.readOutbound(); o != null; o = channel.readOutbound()) {
+                if (o instanceof ByteBufHolder) {
+                    ((ByteBufHolder) o).release();
+                }
+            }
+            channel.close();
+        }
+    }
+
+    /**
+     * Make up a request path which matches a page's route, substituting
+     * <code>1</code> for wildcards and captures (so it satisfies typed
+     * captures too), or null if the page's route has no path.
+     */
+    static String sampleUri(Class<? extends Page> type) {
+        Route route = type.getAnnotation(Route.class);
+        if (route == null || route.path().length == 0) {
+            return null;
+        }
+        StringBuilder sb = new StringBuilder();
+        int length = 0;
+        for (String element : RouteTable.parse(type, route.path()[0])) {
+            if ("**".equals(element)) {
+                break;
+            }
+            boolean wild = "*".equals(element) || element.startsWith("{");
+            sb.append('/').append(wild ? "1" : element);
+            length++;
+        }
+        for (; length < route.minimumPathLength(); length++) {
+            sb.append("/1");
+        }
+        return sb.length() == 0 ? "/" : sb.toString();
+    }
+
+    /**
+     * The embedded channel needs a handler;  the request is passed to the
+     * application directly.
+     */
+    private static final class Discard extends ChannelInboundMessageHandlerAdapter<Object> {
+
+        @Override
+        public void messageReceived(ChannelHandlerContext ctx, Object msg) {
+            // do nothing
+        }
+    }
+}
@@ -57,9 +57,11 @@ final class ServerImpl implements Server {
     private int port = 8123;
     private final ThreadFactory eventThreadFactory;
     private final ThreadCount eventThreadCount;
-    private final ThreadFactory workerThreadFactory;
-    private final ThreadCount workerThreadCount;
+    private final ThreadFactory ioThreadFactory;
+    private final ThreadCount ioThreadCount;
     private final ServerBootstrap bootstrap;
+    private final Readiness readiness;
+    private final ThreadPools pools;
 
     @Inject
     ServerImpl(@Named(ServerImpl.WORKER_THREAD_POOL_NAME) ExecutorService workerThreadPool,
@@ -67,9 +69,11 @@ final class ServerImpl implements Server {
             ChannelInitializer<SocketChannel> pipelineFactory,
             @Named("event") ThreadFactory eventThreadFactory, 
             @Named("event") ThreadCount eventThreadCount,
-            @Named("workers") ThreadFactory workerThreadFactory, 
-            @Named("workers") ThreadCount workerThreadCount,
+            @Named("io") ThreadFactory ioThreadFactory,
+            @Named("io") ThreadCount ioThreadCount,
             ServerBootstrap bootstrap,
+            Readiness readiness,
+            ThreadPools pools,
             Settings settings) {
         this.port = settings.getInt("port", 8123);
         this.workerThreadPool = workerThreadPool;
@@ -77,9 +81,11 @@ final class ServerImpl implements Server {
         this.pipelineFactory = pipelineFactory;
         this.eventThreadFactory = eventThreadFactory;
         this.eventThreadCount = eventThreadCount;
-        this.workerThreadFactory = workerThreadFactory;
-        this.workerThreadCount = workerThreadCount;
+        this.ioThreadFactory = ioThreadFactory;
+        this.ioThreadCount = ioThreadCount;
         this.bootstrap = bootstrap;
+        this.readiness = readiness;
+        this.pools = pools;
     }
     
     @Override
@@ -103,14 +109,17 @@ final class ServerImpl implements Server {
         try {
 
             NioEventLoopGroup events = new NioEventLoopGroup(eventThreadCount.get(), eventThreadFactory);
-            NioEventLoopGroup workers = new NioEventLoopGroup(workerThreadCount.get(), workerThreadFactory);
+            NioEventLoopGroup io = new NioEventLoopGroup(ioThreadCount.get(), ioThreadFactory);
+            pools.register("event", "acceptor", events, eventThreadCount.get(), null);
+            pools.register("io", "io", io, ioThreadCount.get(), null);
 
-            bootstrap.group(events, workers)
+            bootstrap.group(events, io)
              .channel(NioServerSocketChannel.class)
              .childHandler(pipelineFactory)
              .localAddress(new InetSocketAddress(port));
             
             localChannel = bootstrap.bind().sync().channel();
+            readiness.setReady(true);
             System.err.println("Starting " + this);
 
             // Bind and start to accept incoming connections.
@@ -133,6 +142,7 @@ final class ServerImpl implements Server {
     }
 
     private void shutdown(boolean immediately, long timeout, TimeUnit unit, boolean await) throws InterruptedException {
+        readiness.setReady(false);
         shutdownThreadPool (workerThreadPool, immediately);
         shutdownThreadPool (backgroundThreadPool, immediately);
         try {
@@ -155,6 +165,7 @@ final class ServerImpl implements Server {
 
     @Override
     public void shutdown(boolean immediately) throws InterruptedException {
+        readiness.setReady(false);
         if (immediately) {
             workerThreadPool.shutdownNow();
             backgroundThreadPool.shutdownNow();
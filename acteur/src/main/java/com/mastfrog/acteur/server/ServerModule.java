@@ -43,6 +43,9 @@ import com.mastfrog.acteur.Application;
 import com.mastfrog.acteur.Event;
 import com.mastfrog.acteur.ImplicitBindings;
 import com.mastfrog.acteur.Page;
+import com.mastfrog.acteur.PathCaptures;
+import com.mastfrog.acteur.PredicateMemo;
+import com.mastfrog.acteur.WarmUp;
 import com.mastfrog.acteur.util.BasicCredentials;
 import com.mastfrog.acteur.server.ServerModule.TF;
 import com.mastfrog.util.ConfigurationError;
@@ -61,10 +64,22 @@ import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.SynchronousQueue;
 import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 import org.joda.time.DateTime;
 import org.joda.time.Duration;
 
@@ -99,6 +114,34 @@ public class ServerModule<A extends Application> extends AbstractModule {
      * The default allocator to use if none is specified
      */
     public static final String DEFAULT_ALLOCATOR = POOLED_ALLOCATOR;
+    /**
+     * Property name for running the worker and background thread pools'
+     * tasks on virtual threads, on JDKs which support them, so that many
+     * more requests can block at once than there are platform threads.
+     * Ignored, with a warning, on JDKs that do not.
+     */
+    public static final String VIRTUAL_THREADS_SETTINGS_KEY = "acteur.virtual.threads";
+    /**
+     * Prefix for settings which configure the worker and background thread
+     * pools, followed by the pool name and one of:
+     * <ul>
+     * <li><code>.type</code> - <code>fixed</code>, <code>cached</code> or
+     * <code>forkjoin</code> (a work-stealing pool, only suitable for
+     * CPU-bound work which does not block);  the background pool defaults
+     * to cached and the worker pool to fixed</li>
+     * <li><code>.queue</code> - for fixed pools, and cached ones whose size
+     * is set, <code>unbounded</code> (the default), <code>bounded</code> or
+     * <code>synchronous</code></li>
+     * <li><code>.bound</code> - the capacity of a bounded queue, default
+     * 1024</li>
+     * </ul>
+     * e.g. <code>acteur.pool.background.type=fixed</code>.  Pool sizes are
+     * set with <code>workerThreads</code> and <code>backgroundThreads</code>;
+     * a cached pool is unbounded unless its size is set, in which case tasks
+     * beyond that many wait in its queue.  Tasks a pool cannot accept are
+     * rejected, answered with a 503 and counted in {@link ThreadPools}.
+     */
+    public static final String POOL_SETTINGS_PREFIX = "acteur.pool.";
     private final Class<A> appType;
     private ReentrantScope scope = new ReentrantScope();
     private final int eventThreads;
@@ -131,7 +174,8 @@ public class ServerModule<A extends Application> extends AbstractModule {
         bind(ServerBootstrap.class).toProvider(new ServerBootstrapProvider(binder().getProvider(Settings.class)));
 
         scope.bindTypes(binder(), Event.class,
-                Page.class, BasicCredentials.class);
+                Page.class, BasicCredentials.class, PathCaptures.class,
+                PredicateMemo.class);
 
         ImplicitBindings implicit = appType.getAnnotation(ImplicitBindings.class);
         if (implicit != null) {
@@ -142,25 +186,34 @@ public class ServerModule<A extends Application> extends AbstractModule {
         Provider<Settings> set = binder().getProvider(Settings.class);
 
         TF eventThreadFactory = new TF("event", appProvider);
+        TF ioThreadFactory = new TF("io", appProvider);
         TF workerThreadFactory = new TF("worker", appProvider);
         TF backgroundThreadFactory = new TF(Server.BACKGROUND_THREAD_POOL_NAME, appProvider);
 
         ThreadCount workerThreadCount = new ThreadCount(set, 8, workerThreads, "workerThreads");
         ThreadCount eventThreadCount = new ThreadCount(set, 8, eventThreads, "eventThreads");
+        ThreadCount ioThreadCount = new ThreadCount(set, 8, -1, "ioThreads");
         ThreadCount backgroundThreadCount = new ThreadCount(set, 128, backgroundThreads, "backgroundThreads");
 
         bind(ThreadCount.class).annotatedWith(Names.named("event")).toInstance(eventThreadCount);
-        bind(ThreadCount.class).annotatedWith(Names.named("workers")).toInstance(eventThreadCount);
-        bind(ThreadCount.class).annotatedWith(Names.named(Server.BACKGROUND_THREAD_POOL_NAME)).toInstance(eventThreadCount);
+        bind(ThreadCount.class).annotatedWith(Names.named("io")).toInstance(ioThreadCount);
+        bind(ThreadCount.class).annotatedWith(Names.named("workers")).toInstance(workerThreadCount);
+        bind(ThreadCount.class).annotatedWith(Names.named(Server.BACKGROUND_THREAD_POOL_NAME)).toInstance(backgroundThreadCount);
 
         bind(ThreadFactory.class).annotatedWith(Names.named("workers")).toInstance(workerThreadFactory);
         bind(ThreadFactory.class).annotatedWith(Names.named("event")).toInstance(eventThreadFactory);
+        bind(ThreadFactory.class).annotatedWith(Names.named("io")).toInstance(ioThreadFactory);
         bind(ThreadFactory.class).annotatedWith(Names.named(Server.BACKGROUND_THREAD_POOL_NAME)).toInstance(backgroundThreadFactory);
 
+        ThreadPools pools = new ThreadPools();
+        bind(ThreadPools.class).toInstance(pools);
+
         Provider<ExecutorService> workerProvider =
-                new ExecutorServiceProvider(workerThreadFactory, workerThreadCount);
+                new ExecutorServiceProvider(Server.WORKER_THREAD_POOL_NAME, "blocking",
+                workerThreadFactory, workerThreadCount, set, pools);
         Provider<ExecutorService> backgroundProvider =
-                new ExecutorServiceProvider(backgroundThreadFactory, backgroundThreadCount);
+                new ExecutorServiceProvider(Server.BACKGROUND_THREAD_POOL_NAME, "acteurs",
+                backgroundThreadFactory, backgroundThreadCount, set, pools);
 
         bind(ExecutorService.class).annotatedWith(Names.named(
                 Server.WORKER_THREAD_POOL_NAME)).toProvider(workerProvider);
@@ -279,28 +332,103 @@ public class ServerModule<A extends Application> extends AbstractModule {
         }
     }
 
-    private static final class ExecutorServiceProvider implements Provider<ExecutorService> {
+    private static final class ExecutorServiceProvider implements Provider<ExecutorService>, RejectedExecutionHandler {
 
+        private final String name;
+        private final String role;
         private final TF tf;
         private volatile ExecutorService svc;
         private final ThreadCount count;
+        private final Provider<Settings> settings;
+        private final ThreadPools pools;
+        private final AtomicLong rejections = new AtomicLong();
 
-        public ExecutorServiceProvider(TF tf, ThreadCount count) {
+        public ExecutorServiceProvider(String name, String role, TF tf, ThreadCount count, Provider<Settings> settings, ThreadPools pools) {
+            this.name = name;
+            this.role = role;
             this.tf = tf;
             this.count = count;
+            this.settings = settings;
+            this.pools = pools;
         }
 
         private ExecutorService create() {
-            switch (tf.name()) {
-                case Server.BACKGROUND_THREAD_POOL_NAME:
-//                    return LoggingExecutorService.wrap(tf.name(), Executors.newCachedThreadPool(tf));
-                    return Executors.newCachedThreadPool(tf);
+            Settings s = settings.get();
+            if (s.getBoolean(VIRTUAL_THREADS_SETTINGS_KEY, false)) {
+                // One virtual thread per task;  the TF still handles
+                // uncaught exceptions, and shutdown works as usual
+                ExecutorService result = VirtualThreads.newExecutor(tf.name(), tf);
+                if (result != null) {
+                    pools.register(name, role, result, -1, null);
+                    return result;
+                }
+                Logger.getLogger(ServerModule.class.getName()).log(Level.WARNING,
+                        "{0} is set, but this JVM does not support virtual "
+                        + "threads;  using platform threads for {1}",
+                        new Object[]{VIRTUAL_THREADS_SETTINGS_KEY, tf.name()});
+            }
+            String prefix = POOL_SETTINGS_PREFIX + name;
+            String type = s.getString(prefix + ".type",
+                    Server.BACKGROUND_THREAD_POOL_NAME.equals(name) ? "cached" : "fixed");
+            ExecutorService result;
+            int size;
+            switch (type) {
+                case "cached":
+                    size = count.isSet() ? count.get() : -1;
+                    if (size < 0) {
+                        result = new ThreadPoolExecutor(0, Integer.MAX_VALUE,
+                                60, TimeUnit.SECONDS, new SynchronousQueue<Runnable>(), tf, this);
+                    } else {
+                        // A thread pool only grows past its core size when
+                        // its queue is full, so to queue tasks rather than
+                        // reject them once all threads are busy, let core
+                        // threads time out instead
+                        ThreadPoolExecutor tpe = new ThreadPoolExecutor(size, size,
+                                60, TimeUnit.SECONDS, queue(s, prefix), tf, this);
+                        tpe.allowCoreThreadTimeOut(true);
+                        result = tpe;
+                    }
+                    break;
+                case "fixed":
+                    size = count.get();
+                    result = new ThreadPoolExecutor(size, size, 0, TimeUnit.MILLISECONDS,
+                            queue(s, prefix), tf, this);
+                    break;
+                case "forkjoin":
+                    size = count.get();
+                    // Async mode - tasks are submitted, never joined
+                    result = new ForkJoinPool(size, tf, tf, true);
+                    break;
                 default:
-//                    return LoggingExecutorService.wrap(tf.name(), Executors.newFixedThreadPool(count.get(), tf));
-                    return Executors.newFixedThreadPool(count.get(), tf);
+                    throw new ConfigurationError("Unknown value for " + prefix
+                            + ".type '" + type + "'; valid values are cached, fixed, forkjoin");
+            }
+            pools.register(name, role, result, size, rejections);
+            return result;
+        }
+
+        private BlockingQueue<Runnable> queue(Settings s, String prefix) {
+            String queue = s.getString(prefix + ".queue", "unbounded");
+            switch (queue) {
+                case "unbounded":
+                    return new LinkedBlockingQueue<>();
+                case "bounded":
+                    return new ArrayBlockingQueue<>(s.getInt(prefix + ".bound", 1024));
+                case "synchronous":
+                    return new SynchronousQueue<>();
+                default:
+                    throw new ConfigurationError("Unknown value for " + prefix
+                            + ".queue '" + queue + "'; valid values are unbounded, bounded, synchronous");
             }
         }
 
+        @Override
+        public void rejectedExecution(Runnable r, ThreadPoolExecutor executor) {
+            rejections.incrementAndGet();
+            throw new RejectedExecutionException(name + " cannot accept " + r
+                    + (executor.isShutdown() ? " - shut down" : " - saturated"));
+        }
+
         @Override
         public ExecutorService get() {
             if (svc == null) {
@@ -314,7 +442,7 @@ public class ServerModule<A extends Application> extends AbstractModule {
         }
     }
 
-    static final class TF implements ThreadFactory, UncaughtExceptionHandler {
+    static final class TF implements ThreadFactory, ForkJoinPool.ForkJoinWorkerThreadFactory, UncaughtExceptionHandler {
 
         private final String name;
         private final Provider<Application> app;
@@ -340,6 +468,16 @@ public class ServerModule<A extends Application> extends AbstractModule {
             return t;
         }
 
+        @Override
+        public ForkJoinWorkerThread newThread(ForkJoinPool pool) {
+            ForkJoinWorkerThread t = new ForkJoinWorkerThread(pool) {
+            };
+            t.setDaemon(true);
+            t.setUncaughtExceptionHandler(this);
+            t.setName(name + "-" + count.getAndIncrement());
+            return t;
+        }
+
         @Override
         public void uncaughtException(Thread on, Throwable error) {
             app.get().onError(error);
@@ -393,7 +531,10 @@ public class ServerModule<A extends Application> extends AbstractModule {
         Dependencies dependencies = new Dependencies(settings, this);
         Server server = dependencies.getInstance(Server.class);
         onBeforeStart(server, dependencies);
-
+        WarmUp warmUp = dependencies.getInstance(WarmUp.class);
+        if (warmUp.isEnabled()) {
+            warmUp.run();
+        }
         server.start();
         onAfterStart(server, dependencies);
         return server;
@@ -45,6 +45,15 @@ final class ThreadCount {
         this.propertyName = propertyName;
     }
 
+    /**
+     * Determine if the number was set explicitly rather than defaulted.
+     *
+     * @return true if it was set
+     */
+    boolean isSet() {
+        return overrideValue > 0 || set.get().getInt(propertyName) != null;
+    }
+
     public int get() {
         if (overrideValue > 0) {
             return overrideValue;
@@ -0,0 +1,152 @@
+/* 
+ * The MIT License
+ *
+ * Copyright 2013 Tim Boudreau.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.mastfrog.acteur.server;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Live view of one of the server's thread pools.  Figures a particular kind
+ * of pool cannot supply - such as the queue depth of a Netty event loop
+ * group, or anything but the size of a virtual thread executor - are -1.
+ *
+ * @author Tim Boudreau
+ */
+public final class ThreadPoolStats {
+
+    private final String name;
+    private final String role;
+    private final Object executor;
+    private final int configuredSize;
+    private final AtomicLong rejections;
+
+    ThreadPoolStats(String name, String role, Object executor, int configuredSize, AtomicLong rejections) {
+        this.name = name;
+        this.role = role;
+        this.executor = executor;
+        this.configuredSize = configuredSize;
+        this.rejections = rejections;
+    }
+
+    /**
+     * The name the pool is bound with, which is also the thread name prefix.
+     *
+     * @return The name
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * What the pool is used for - acceptor, io, acteurs or blocking.
+     *
+     * @return The role
+     */
+    public String getRole() {
+        return role;
+    }
+
+    /**
+     * The number of threads the pool was configured with, or -1 if it is
+     * unbounded.
+     *
+     * @return The configured size
+     */
+    public int getConfiguredSize() {
+        return configuredSize;
+    }
+
+    /**
+     * The number of threads the pool currently has.
+     *
+     * @return A count
+     */
+    public int getPoolSize() {
+        if (executor instanceof ThreadPoolExecutor) {
+            return ((ThreadPoolExecutor) executor).getPoolSize();
+        } else if (executor instanceof ForkJoinPool) {
+            return ((ForkJoinPool) executor).getPoolSize();
+        }
+        return configuredSize;
+    }
+
+    /**
+     * The number of threads currently running tasks.
+     *
+     * @return A count
+     */
+    public int getActiveCount() {
+        if (executor instanceof ThreadPoolExecutor) {
+            return ((ThreadPoolExecutor) executor).getActiveCount();
+        } else if (executor instanceof ForkJoinPool) {
+            return ((ForkJoinPool) executor).getActiveThreadCount();
+        }
+        return -1;
+    }
+
+    /**
+     * The number of tasks waiting for a thread.
+     *
+     * @return A count
+     */
+    public long getQueueDepth() {
+        if (executor instanceof ThreadPoolExecutor) {
+            return ((ThreadPoolExecutor) executor).getQueue().size();
+        } else if (executor instanceof ForkJoinPool) {
+            ForkJoinPool fj = (ForkJoinPool) executor;
+            return fj.getQueuedSubmissionCount() + fj.getQueuedTaskCount();
+        }
+        return -1;
+    }
+
+    /**
+     * The number of tasks completed so far.
+     *
+     * @return A count
+     */
+    public long getCompletedTaskCount() {
+        if (executor instanceof ThreadPoolExecutor) {
+            return ((ThreadPoolExecutor) executor).getCompletedTaskCount();
+        }
+        return -1;
+    }
+
+    /**
+     * The number of tasks refused because the pool's queue was full.
+     *
+     * @return A count
+     */
+    public long getRejections() {
+        return rejections == null ? -1 : rejections.get();
+    }
+
+    @Override
+    public String toString() {
+        return name + "(" + role + "){size=" + getPoolSize() + "/" + configuredSize
+                + ", active=" + getActiveCount() + ", queued=" + getQueueDepth()
+                + ", completed=" + getCompletedTaskCount()
+                + ", rejected=" + getRejections() + '}';
+    }
+}
@@ -0,0 +1,96 @@
+/* 
+ * The MIT License
+ *
+ * Copyright 2013 Tim Boudreau.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.mastfrog.acteur.server;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The server's thread pools, by name, for monitoring.  The topology is:
+ * <ul>
+ * <li><b>event</b> - the Netty event loop group which accepts connections,
+ * sized by the <code>eventThreads</code> setting</li>
+ * <li><b>io</b> - the Netty event loop group which reads and writes them,
+ * sized by <code>ioThreads</code></li>
+ * <li><b>background</b> - the pool chains of acteurs run on, sized by
+ * <code>backgroundThreads</code></li>
+ * <li><b>workers</b> - a pool for blocking or CPU-bound work acteurs hand
+ * off, sized by <code>workerThreads</code></li>
+ * </ul>
+ * The latter two are configured further with the settings described in
+ * {@link ServerModule#POOL_SETTINGS_PREFIX}.  Pools appear here once they
+ * have been created.
+ *
+ * @author Tim Boudreau
+ */
+public final class ThreadPools {
+
+    private final Map<String, ThreadPoolStats> pools = new ConcurrentSkipListMap<>();
+
+    ThreadPools() {
+    }
+
+    /**
+     * Add a pool to be monitored.
+     *
+     * @param name The pool name
+     * @param role What it is used for
+     * @param executor The pool - a ThreadPoolExecutor or ForkJoinPool supply
+     * the most statistics
+     * @param configuredSize Its configured size, or -1 if unbounded
+     * @param rejections Counter of refused tasks, or null
+     */
+    public void register(String name, String role, Object executor, int configuredSize, AtomicLong rejections) {
+        pools.put(name, new ThreadPoolStats(name, role, executor, configuredSize, rejections));
+    }
+
+    /**
+     * Get the statistics for a pool.
+     *
+     * @param name The pool name
+     * @return The statistics, or null if no such pool has been created
+     */
+    public ThreadPoolStats get(String name) {
+        return pools.get(name);
+    }
+
+    /**
+     * Get the statistics for all pools created so far.
+     *
+     * @return A list of statistics, sorted by name
+     */
+    public List<ThreadPoolStats> all() {
+        Collection<ThreadPoolStats> values = pools.values();
+        return new ArrayList<>(values);
+    }
+
+    @Override
+    public String toString() {
+        return "ThreadPools" + all();
+    }
+}
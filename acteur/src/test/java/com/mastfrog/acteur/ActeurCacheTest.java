@@ -0,0 +1,150 @@
+/* 
+ * The MIT License
+ *
+ * Copyright 2013 Tim Boudreau.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.mastfrog.acteur;
+
+import com.google.common.cache.CacheStats;
+import com.google.inject.Inject;
+import com.mastfrog.acteur.util.Headers;
+import com.mastfrog.acteur.util.Method;
+import io.netty.handler.codec.http.HttpResponseStatus;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author Tim Boudreau
+ */
+public class ActeurCacheTest {
+
+    @Test
+    public void testCache() {
+        ActeurCache cache = new ActeurCache();
+        assertNull(cache.getStats(FindTenant.class));
+        assertNull(cache.get(FindTenant.class, "/a"));
+        cache.put(FindTenant.class, "/a", new Object[]{"tenant-a"});
+        assertArrayEquals(new Object[]{"tenant-a"}, cache.get(FindTenant.class, "/a"));
+        cache.put(FindTenant.class, "/b", new Object[]{"tenant-b"});
+        cache.put(FindTenant.class, "/c", new Object[]{"tenant-c"});
+
+        CacheStats stats = cache.getStats(FindTenant.class);
+        assertEquals(1, stats.hitCount());
+        assertEquals(1, stats.missCount());
+        assertEquals(1, stats.evictionCount());
+        assertEquals(stats, cache.getTotalStats());
+
+        cache.invalidateAll();
+        assertNull(cache.get(FindTenant.class, "/c"));
+    }
+
+    @Test
+    public void testActeursSettingHeadersAreNotSkipped() throws Exception {
+        EmbeddedRequests requests = new EmbeddedRequests(App.class);
+        try {
+            ActeurCache cache = requests.deps.getInstance(ActeurCache.class);
+            for (int i = 0; i < 2; i++) {
+                EmbeddedRequests.Reply reply = requests.get("/tenants/a");
+                assertEquals(reply.toString(), 200, reply.status());
+                assertEquals("Tenant a\n", reply.body);
+                assertEquals("a", reply.header("X-Tenant"));
+            }
+            assertEquals(0, cache.getStats(LabelTenant.class).hitCount());
+            assertEquals(2, LabelTenant.runs);
+
+            for (int i = 0; i < 2; i++) {
+                EmbeddedRequests.Reply reply = requests.get("/users/b");
+                assertEquals(reply.toString(), 200, reply.status());
+                assertEquals("User b\n", reply.body);
+            }
+            assertEquals(1, cache.getStats(FindUser.class).hitCount());
+            assertEquals(1, FindUser.runs);
+        } finally {
+            requests.shutdown();
+        }
+    }
+
+    @Memoized(pathElements = 1, maximumSize = 2)
+    static class FindTenant extends Acteur {
+    }
+
+    @ImplicitBindings(String.class)
+    static class App extends Application {
+
+        App() {
+            add(TenantPage.class);
+            add(UserPage.class);
+        }
+    }
+
+    @Route(methods = Method.GET, path = "tenants/*")
+    static class TenantPage extends Page {
+
+        TenantPage() {
+            add(LabelTenant.class);
+            add(Respond.class);
+        }
+    }
+
+    @Route(methods = Method.GET, path = "users/*")
+    static class UserPage extends Page {
+
+        UserPage() {
+            add(FindUser.class);
+            add(Respond.class);
+        }
+    }
+
+    @Memoized(pathElements = 1)
+    static class LabelTenant extends Acteur {
+
+        static int runs;
+
+        @Inject
+        LabelTenant(Event event) {
+            runs++;
+            String tenant = event.getPath().getElements()[1].toString();
+            add(Headers.stringHeader("X-Tenant"), tenant);
+            setState(new ConsumedLockedState("Tenant " + tenant));
+        }
+    }
+
+    @Memoized(pathElements = 1)
+    static class FindUser extends Acteur {
+
+        static int runs;
+
+        @Inject
+        FindUser(Event event) {
+            runs++;
+            setState(new ConsumedLockedState("User " + event.getPath().getElements()[1]));
+        }
+    }
+
+    static class Respond extends Acteur {
+
+        @Inject
+        Respond(String name) {
+            setState(new RespondWith(HttpResponseStatus.OK, name + "\n"));
+        }
+    }
+}
@@ -0,0 +1,91 @@
+/* 
+ * The MIT License
+ *
+ * Copyright 2013 Tim Boudreau.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.mastfrog.acteur;
+
+import com.google.inject.Inject;
+import com.mastfrog.acteur.util.Method;
+import io.netty.handler.codec.http.HttpResponseStatus;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author Tim Boudreau
+ */
+public class ActeurTest {
+
+    static volatile Throwable captured;
+    static volatile Acteur predicate;
+
+    @Test
+    public void testCreationStacksOnlyWhenAsked() throws Exception {
+        EmbeddedRequests requests = new EmbeddedRequests(App.class);
+        try {
+            assertEquals(200, requests.get("/probe").status());
+            // Assertions being on is enough
+            boolean asserts = false;
+            assert asserts = true;
+            assertEquals(asserts, Acteur.isCapturingStacks());
+            assertEquals(asserts, captured != null);
+            assertEquals(asserts, predicate.creationStackTrace != null);
+        } finally {
+            requests.shutdown();
+        }
+        requests = new EmbeddedRequests(App.class, Application.CAPTURE_ACTEUR_STACKS_SETTINGS_KEY, "true");
+        try {
+            assertEquals(200, requests.get("/probe").status());
+            assertNotNull(captured);
+            // Including acteurs created by the page's constructor
+            assertNotNull(predicate.creationStackTrace);
+        } finally {
+            requests.shutdown();
+            Acteur.setCaptureStacks(false);
+        }
+    }
+
+    static class App extends Application {
+
+        App() {
+            add(ProbePage.class);
+        }
+    }
+
+    @Route(methods = Method.GET, path = "probe")
+    static class ProbePage extends Page {
+
+        @Inject
+        ProbePage(ActeurFactory af) {
+            add(predicate = af.matchMethods(Method.GET));
+            add(Probe.class);
+        }
+    }
+
+    static class Probe extends Acteur {
+
+        Probe() {
+            captured = creationStackTrace;
+            setState(new RespondWith(HttpResponseStatus.OK, "Probed\n"));
+        }
+    }
+}
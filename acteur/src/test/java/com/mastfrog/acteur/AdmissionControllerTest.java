@@ -0,0 +1,133 @@
+/* 
+ * The MIT License
+ *
+ * Copyright 2013 Tim Boudreau.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.mastfrog.acteur;
+
+import com.mastfrog.acteur.server.ServerModule;
+import com.mastfrog.acteur.util.Method;
+import io.netty.handler.codec.http.HttpMethod;
+import io.netty.handler.codec.http.HttpResponseStatus;
+import java.util.concurrent.TimeUnit;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author Tim Boudreau
+ */
+public class AdmissionControllerTest {
+
+    @Test
+    public void testLimit() throws Exception {
+        AdmissionController ac = new AdmissionController(true, 2, 1, 4, 50, 3);
+        assertEquals(2, ac.getLimit());
+        assertEquals(3, ac.getRetryAfter().getStandardSeconds());
+        assertTrue(ac.tryAcquire());
+        assertTrue(ac.tryAcquire());
+        assertFalse(ac.tryAcquire());
+        assertEquals(2, ac.getInFlight());
+        assertEquals(1, ac.getRejected());
+
+        // Fast responses raise the limit additively, up to the maximum
+        long now = System.nanoTime();
+        ac.release(now);
+        ac.release(now);
+        // 2 + 1/2 + 1/2.5
+        assertEquals(2, ac.getLimit());
+        assertTrue(ac.tryAcquire());
+        ac.release(now);
+        assertEquals(3, ac.getLimit());
+        for (int i = 0; i < 20; i++) {
+            assertTrue(ac.tryAcquire());
+            ac.release(System.nanoTime());
+        }
+        assertEquals(4, ac.getLimit());
+        assertEquals(0, ac.getInFlight());
+
+        // A slow one cuts it, but only once per target latency
+        long slow = System.nanoTime() - TimeUnit.SECONDS.toNanos(1);
+        assertTrue(ac.tryAcquire());
+        assertTrue(ac.tryAcquire());
+        ac.release(slow);
+        ac.release(slow);
+        assertEquals(3, ac.getLimit());
+        assertEquals(25, ac.getAdmitted());
+    }
+
+    @Test
+    public void testSaturatedPool() throws Exception {
+        // One thread and room for one more request in its queue
+        String pool = ServerModule.POOL_SETTINGS_PREFIX + "background";
+        EmbeddedRequests requests = new EmbeddedRequests(App.class,
+                "backgroundThreads", "1",
+                pool + ".type", "fixed",
+                pool + ".queue", "bounded",
+                pool + ".bound", "1",
+                AdmissionController.ADMISSION_SETTINGS_KEY, "true",
+                AdmissionController.RETRY_AFTER_SETTINGS_KEY, "7");
+        try {
+            AdmissionController admission = requests.deps.getInstance(AdmissionController.class);
+            EmbeddedRequests.Request running = requests.start(HttpMethod.GET, "/block");
+            requests.gate.awaitStarted();
+            EmbeddedRequests.Request queued = requests.start(HttpMethod.GET, "/block");
+            // Nowhere to put this one - it is answered rather than lost
+            EmbeddedRequests.Reply rejected = requests.get("/block");
+            assertEquals(rejected.toString(), 503, rejected.status());
+            assertEquals("7", rejected.header("Retry-After"));
+            assertEquals(2, admission.getInFlight());
+
+            requests.gate.release();
+            assertEquals(200, running.await().status());
+            assertEquals(200, queued.await().status());
+            assertEquals(0, admission.getInFlight());
+        } finally {
+            requests.shutdown();
+        }
+    }
+
+    static class App extends Application {
+
+        App() {
+            add(Blocking.class);
+        }
+    }
+
+    @Route(methods = Method.GET, path = "block")
+    static class Blocking extends Page {
+
+        Blocking() {
+            add(EmbeddedRequests.Hold.class);
+            add(Done.class);
+        }
+    }
+
+    // Runs straight after the hold, without another trip through the
+    // saturated pool
+    @NonBlocking
+    static class Done extends Acteur {
+
+        Done() {
+            setState(new RespondWith(HttpResponseStatus.OK, "Done\n"));
+        }
+    }
+}
@@ -0,0 +1,113 @@
+/* 
+ * The MIT License
+ *
+ * Copyright 2013 Tim Boudreau.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.mastfrog.acteur;
+
+import com.google.inject.Inject;
+import com.mastfrog.acteur.server.Server;
+import com.mastfrog.acteur.server.ServerModule;
+import com.mastfrog.acteur.util.Method;
+import com.mastfrog.acteur.util.RequestID;
+import com.mastfrog.giulius.Dependencies;
+import com.mastfrog.settings.MutableSettings;
+import com.mastfrog.settings.SettingsBuilder;
+import com.mastfrog.util.Streams;
+import io.netty.handler.codec.http.HttpResponseStatus;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.ServerSocket;
+import java.net.URL;
+import java.util.concurrent.TimeUnit;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author Tim Boudreau
+ */
+public class AffinityTest {
+
+    @Test
+    public void testScopeOnEventLoop() throws Exception {
+        int port;
+        try (ServerSocket socket = new ServerSocket(0)) {
+            port = socket.getLocalPort();
+        }
+        MutableSettings settings = SettingsBuilder.createDefault().buildMutableSettings();
+        settings.setInt("port", port);
+        settings.setBoolean(PagesImpl.AFFINITY_SETTINGS_KEY, true);
+        Dependencies deps = new Dependencies(settings, new ServerModule<>(App.class));
+        Server server = deps.getInstance(Server.class);
+        server.start();
+        try {
+            HttpURLConnection conn = (HttpURLConnection) new URL("http://localhost:" + port + "/id").openConnection();
+            try (InputStream in = conn.getErrorStream() == null ? conn.getInputStream() : conn.getErrorStream()) {
+                String body = Streams.readString(in);
+                assertEquals(body, 200, conn.getResponseCode());
+                // Moved back to the event loop from a worker thread, with
+                // the request's id still in scope
+                assertTrue(body, body.startsWith("io-"));
+            }
+        } finally {
+            server.shutdown(false, 10, TimeUnit.SECONDS);
+        }
+    }
+
+    @ImplicitBindings(RequestID.class)
+    static class App extends Application {
+
+        App() {
+            add(IdPage.class);
+        }
+    }
+
+    static class IdPage extends Page {
+
+        @Inject
+        IdPage(ActeurFactory af) {
+            add(af.matchMethods(Method.GET));
+            add(OffLoop.class);
+            add(OnLoop.class);
+        }
+    }
+
+    static class OffLoop extends Acteur {
+
+        OffLoop() {
+            assertFalse(Thread.currentThread().getName().startsWith("io-"));
+            // Adding to the context leaves it to the runner to pick the
+            // thread the next acteur runs on
+            setState(new ConsumedState("off"));
+        }
+    }
+
+    @NonBlocking
+    static class OnLoop extends Acteur {
+
+        @Inject
+        OnLoop(RequestID id) {
+            setState(new RespondWith(HttpResponseStatus.OK, Thread.currentThread().getName()
+                    + " " + id));
+        }
+    }
+}
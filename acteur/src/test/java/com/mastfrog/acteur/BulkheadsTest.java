@@ -0,0 +1,150 @@
+/* 
+ * The MIT License
+ *
+ * Copyright 2013 Tim Boudreau.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.mastfrog.acteur;
+
+import com.google.inject.Inject;
+import com.mastfrog.acteur.util.Method;
+import com.mastfrog.giulius.ShutdownHookRegistry;
+import io.netty.handler.codec.http.HttpMethod;
+import io.netty.handler.codec.http.HttpResponseStatus;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author Tim Boudreau
+ */
+public class BulkheadsTest {
+
+    @Test
+    public void testQuota() {
+        Bulkheads bulkheads = new Bulkheads(null, new Hooks());
+        assertNull(bulkheads.get(Page.class));
+        assertEquals(-1, bulkheads.getRejections(SlowPage.class));
+
+        Bulkheads.Compartment c = bulkheads.get(SlowPage.class);
+        assertNotNull(c);
+        assertSame(c, bulkheads.get(SlowPage.class));
+        assertEquals(429, c.spec.rejectionStatus());
+        assertTrue(c.tryEnter());
+        assertTrue(c.tryEnter());
+        assertTrue(c.tryEnter());
+        assertFalse(c.tryEnter());
+        assertEquals(3, bulkheads.getOccupancy(SlowPage.class));
+        assertEquals(1, bulkheads.getRejections(SlowPage.class));
+        c.exit();
+        assertTrue(c.tryEnter());
+        c.executor.shutdown();
+    }
+
+    @Test
+    public void testShutdown() {
+        Hooks hooks = new Hooks();
+        Bulkheads bulkheads = new Bulkheads(null, hooks);
+        Bulkheads.Compartment c = bulkheads.get(SlowPage.class);
+        assertFalse(c.executor.isShutdown());
+        assertEquals(1, hooks.hooks.size());
+        hooks.hooks.get(0).run();
+        assertTrue(c.executor.isShutdown());
+        assertTrue(bulkheads.get(GuardedPage.class).executor.isShutdown());
+    }
+
+    @Test
+    public void testPredicatesRunBeforeAdmission() throws Exception {
+        EmbeddedRequests requests = new EmbeddedRequests(App.class);
+        try {
+            Bulkheads bulkheads = requests.deps.getInstance(Bulkheads.class);
+            EmbeddedRequests.Request first = requests.start(HttpMethod.GET, "/guarded");
+            requests.gate.awaitStarted();
+            assertTrue(requests.gate.thread.startsWith("bulkhead-GuardedPage"));
+            assertEquals(1, bulkheads.getOccupancy(GuardedPage.class));
+
+            // The page's predicates reject these, so they go on to the next
+            // page without needing the place the first request holds
+            EmbeddedRequests.Reply otherPath = requests.start(HttpMethod.GET, "/other").await();
+            assertEquals(otherPath.toString(), 200, otherPath.status());
+            assertEquals("Fallback\n", otherPath.body);
+            EmbeddedRequests.Reply otherMethod = requests.start(HttpMethod.PUT, "/guarded").await();
+            assertEquals(otherMethod.toString(), 200, otherMethod.status());
+            assertEquals(0, bulkheads.getRejections(GuardedPage.class));
+
+            // This one is accepted by them, and finds the bulkhead full
+            EmbeddedRequests.Reply full = requests.start(HttpMethod.GET, "/guarded").await();
+            assertEquals(full.toString(), 429, full.status());
+            assertEquals(1, bulkheads.getRejections(GuardedPage.class));
+
+            requests.gate.release();
+            EmbeddedRequests.Reply reply = first.await();
+            assertEquals(200, reply.status());
+            assertEquals("Guarded\n", reply.body);
+            assertEquals(0, bulkheads.getOccupancy(GuardedPage.class));
+        } finally {
+            requests.shutdown();
+        }
+    }
+
+    @Bulkhead(threads = 2, queue = 1, rejectionStatus = 429)
+    static class SlowPage extends Page {
+    }
+
+    static class App extends Application {
+
+        App() {
+            add(GuardedPage.class);
+            add(FallbackPage.class);
+        }
+    }
+
+    @Bulkhead(threads = 1, queue = 0, rejectionStatus = 429)
+    static class GuardedPage extends Page {
+
+        @Inject
+        GuardedPage(ActeurFactory af) {
+            add(af.matchMethods(Method.GET));
+            add(af.matchPath("^guarded$"));
+            add(EmbeddedRequests.Hold.class);
+            add(af.respondWith(HttpResponseStatus.OK, "Guarded\n"));
+        }
+    }
+
+    static class FallbackPage extends Page {
+
+        @Inject
+        FallbackPage(ActeurFactory af) {
+            add(af.respondWith(HttpResponseStatus.OK, "Fallback\n"));
+        }
+    }
+
+    static final class Hooks extends ShutdownHookRegistry {
+
+        final List<Runnable> hooks = new ArrayList<>();
+
+        @Override
+        public void add(Runnable r) {
+            hooks.add(r);
+        }
+    }
+}
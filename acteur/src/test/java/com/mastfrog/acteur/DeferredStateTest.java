@@ -0,0 +1,181 @@
+/* 
+ * The MIT License
+ *
+ * Copyright 2013 Tim Boudreau.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.mastfrog.acteur;
+
+import com.google.common.util.concurrent.SettableFuture;
+import com.google.inject.Inject;
+import com.mastfrog.acteur.util.Headers;
+import com.mastfrog.acteur.util.Method;
+import io.netty.handler.codec.http.HttpMethod;
+import io.netty.handler.codec.http.HttpResponseStatus;
+import java.io.IOException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author Tim Boudreau
+ */
+public class DeferredStateTest {
+
+    static volatile SettableFuture<String> future;
+    static volatile CountDownLatch deferred;
+    private EmbeddedRequests requests;
+
+    @Before
+    public void setUp() throws Exception {
+        future = SettableFuture.create();
+        deferred = new CountDownLatch(1);
+        requests = new EmbeddedRequests(App.class);
+    }
+
+    @After
+    public void tearDown() {
+        requests.shutdown();
+    }
+
+    @Test
+    public void testResume() throws Exception {
+        EmbeddedRequests.Request request = start();
+        future.set("Hello");
+        EmbeddedRequests.Reply reply = request.await();
+        assertEquals(reply.toString(), 200, reply.status());
+        assertEquals("Hello\n", reply.body);
+    }
+
+    @Test
+    public void testFailure() throws Exception {
+        EmbeddedRequests.Request request = start();
+        future.setException(new IOException("Database down"));
+        EmbeddedRequests.Reply reply = request.await();
+        assertEquals(500, reply.status());
+        assertTrue(reply.body, reply.body.contains("Database down"));
+    }
+
+    @Test
+    public void testCancelled() throws Exception {
+        EmbeddedRequests.Request request = start();
+        future.cancel(true);
+        EmbeddedRequests.Reply reply = request.await();
+        assertEquals(500, reply.status());
+    }
+
+    @Test
+    public void testDeadline() throws Exception {
+        Cancellations cancellations = requests.deps.getInstance(Cancellations.class);
+        EmbeddedRequests.Reply reply = requests.get("/slow");
+        assertEquals(503, reply.status());
+        assertTrue(reply.body, reply.body.contains("Deadline for SlowPage exceeded"));
+        // Headers from before the deadline passed are not part of it
+        assertNull(reply.header("X-Partial"));
+        assertEquals(1, cancellations.getTimedOut());
+        assertEquals(1, cancellations.getSkippedActeurs());
+    }
+
+    @Test
+    public void testDisconnect() throws Exception {
+        Cancellations cancellations = requests.deps.getInstance(Cancellations.class);
+        EmbeddedRequests.Request request = start();
+        request.channel.close();
+        // Finished, silently
+        assertNull(request.await().response);
+        assertTrue(future.isCancelled());
+        assertEquals(1, cancellations.getDisconnected());
+        assertEquals(0, cancellations.getTimedOut());
+    }
+
+    private EmbeddedRequests.Request start() throws InterruptedException {
+        EmbeddedRequests.Request request = requests.start(HttpMethod.GET, "/deferred");
+        // Only complete the future once the chain is waiting on it
+        assertTrue(deferred.await(10, TimeUnit.SECONDS));
+        assertEquals(1, request.latch.getCount());
+        return request;
+    }
+
+    @ImplicitBindings(String.class)
+    static class App extends Application {
+
+        App() {
+            add(DeferringPage.class);
+            add(SlowPage.class);
+        }
+    }
+
+    @Route(methods = Method.GET, path = "deferred")
+    static class DeferringPage extends Page {
+
+        DeferringPage() {
+            add(Defer.class);
+            add(Echo.class);
+        }
+    }
+
+    @Deadline(100)
+    @Route(methods = Method.GET, path = "slow")
+    static class SlowPage extends Page {
+
+        @Inject
+        SlowPage(ActeurFactory af) {
+            add(Partial.class);
+            add(Sleep.class);
+            add(af.respondWith(HttpResponseStatus.OK, "Too late\n"));
+        }
+    }
+
+    static class Sleep extends Acteur {
+
+        Sleep() throws InterruptedException {
+            Thread.sleep(300);
+            setState(new ConsumedState());
+        }
+    }
+
+    static class Partial extends Acteur {
+
+        Partial() {
+            add(Headers.stringHeader("X-Partial"), "true");
+            setState(new ConsumedState());
+        }
+    }
+
+    static class Defer extends Acteur {
+
+        Defer() {
+            setState(new DeferredState(future));
+            deferred.countDown();
+        }
+    }
+
+    static class Echo extends Acteur {
+
+        @Inject
+        Echo(String result) {
+            setState(new RespondWith(HttpResponseStatus.OK, result + "\n"));
+        }
+    }
+}
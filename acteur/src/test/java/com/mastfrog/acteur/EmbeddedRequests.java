@@ -0,0 +1,275 @@
+/* 
+ * The MIT License
+ *
+ * Copyright 2013 Tim Boudreau.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.mastfrog.acteur;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.inject.AbstractModule;
+import com.google.inject.Inject;
+import com.google.inject.Module;
+import com.mastfrog.acteur.server.EventImpl;
+import com.mastfrog.acteur.server.PathFactory;
+import com.mastfrog.acteur.server.ServerModule;
+import com.mastfrog.giulius.Dependencies;
+import com.mastfrog.settings.MutableSettings;
+import com.mastfrog.settings.SettingsBuilder;
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundMessageHandlerAdapter;
+import io.netty.channel.ChannelOutboundByteHandlerAdapter;
+import io.netty.channel.ChannelPromise;
+import io.netty.channel.embedded.EmbeddedMessageChannel;
+import io.netty.handler.codec.http.DefaultFullHttpRequest;
+import io.netty.handler.codec.http.FullHttpResponse;
+import io.netty.handler.codec.http.HttpMethod;
+import io.netty.handler.codec.http.HttpResponse;
+import io.netty.handler.codec.http.HttpVersion;
+import io.netty.util.CharsetUtil;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import static org.junit.Assert.*;
+
+/**
+ * Sends requests through an application set up by ServerModule over an
+ * embedded channel, as WarmUp does, so tests can check the responses the
+ * request pipeline produces without binding a port.
+ *
+ * @author Tim Boudreau
+ */
+final class EmbeddedRequests {
+
+    final Dependencies deps;
+    final Application application;
+    /**
+     * The gate {@link Hold} acteurs of this application wait at.
+     */
+    final Gate gate = new Gate();
+
+    /**
+     * Create an application.
+     *
+     * @param type The application type
+     * @param settings Alternating settings keys and values
+     */
+    EmbeddedRequests(Class<? extends Application> type, String... settings) throws IOException {
+        this(type, new Module[0], settings);
+    }
+
+    @SuppressWarnings("unchecked")
+    EmbeddedRequests(Class<? extends Application> type, Module[] modules, String... settings) throws IOException {
+        MutableSettings s = SettingsBuilder.createDefault().buildMutableSettings();
+        for (int i = 0; i < settings.length; i += 2) {
+            s.setString(settings[i], settings[i + 1]);
+        }
+        ServerModule<?> module = new ServerModule(type);
+        for (Module m : modules) {
+            module.add(m);
+        }
+        module.add(new AbstractModule() {
+            @Override
+            protected void configure() {
+                bind(Gate.class).toInstance(gate);
+            }
+        });
+        deps = new Dependencies(s, module);
+        application = deps.getInstance(Application.class);
+    }
+
+    Reply get(String uri, String... headers) throws InterruptedException {
+        return start(HttpMethod.GET, uri, headers).await();
+    }
+
+    /**
+     * Send a request without waiting for the response.
+     *
+     * @param method The method
+     * @param uri The URI
+     * @param headers Alternating header names and values
+     * @return The request in progress
+     */
+    Request start(HttpMethod method, String uri, String... headers) {
+        Body body = new Body();
+        EmbeddedMessageChannel channel = new EmbeddedMessageChannel(new Discard(), body);
+        Event event = event(channel, method, uri, headers);
+        return new Request(channel, body, application.onEvent(event, channel));
+    }
+
+    /**
+     * Create a request without sending it.
+     *
+     * @param channel The channel it arrives on
+     * @param method The method
+     * @param uri The URI
+     * @param headers Alternating header names and values
+     * @return An event
+     */
+    Event event(EmbeddedMessageChannel channel, HttpMethod method, String uri, String... headers) {
+        DefaultFullHttpRequest req = new DefaultFullHttpRequest(HttpVersion.HTTP_1_1, method, uri);
+        for (int i = 0; i < headers.length; i += 2) {
+            req.headers().add(headers[i], headers[i + 1]);
+        }
+        return new EventImpl(req, new InetSocketAddress("127.0.0.1", 0),
+                channel, deps.getInstance(PathFactory.class),
+                deps.getInjector().getProvider(ObjectMapper.class));
+    }
+
+    EmbeddedMessageChannel channel() {
+        return new EmbeddedMessageChannel(new Discard());
+    }
+
+    void shutdown() {
+        // Let any request still held go, so its thread can end
+        gate.release.countDown();
+        deps.shutdown();
+    }
+
+    /**
+     * Where requests reaching a {@link Hold} acteur wait until a test lets
+     * them go;  one per application, so each test gets its own.
+     */
+    static final class Gate {
+
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final AtomicInteger passes = new AtomicInteger();
+        volatile String thread;
+
+        /**
+         * Wait for the first request to reach the gate.
+         */
+        void awaitStarted() throws InterruptedException {
+            assertTrue("No request reached the gate", started.await(10, TimeUnit.SECONDS));
+        }
+
+        /**
+         * Let all waiting and later requests through.
+         */
+        void release() {
+            release.countDown();
+        }
+    }
+
+    /**
+     * Acteur which holds each request at the application's {@link Gate}
+     * until it is released, then continues with the page's next acteur.
+     */
+    static final class Hold extends Acteur {
+
+        @Inject
+        Hold(Gate gate) throws InterruptedException {
+            gate.passes.incrementAndGet();
+            gate.thread = Thread.currentThread().getName();
+            gate.started.countDown();
+            gate.release.await(10, TimeUnit.SECONDS);
+            setState(new ConsumedState());
+        }
+    }
+
+    private static final class Discard extends ChannelInboundMessageHandlerAdapter<Object> {
+
+        @Override
+        public void messageReceived(ChannelHandlerContext ctx, Object msg) {
+            // The request is passed to the application directly
+        }
+    }
+
+    /**
+     * Collects the bytes of the response body, which the embedded channel
+     * would otherwise discard.
+     */
+    private static final class Body extends ChannelOutboundByteHandlerAdapter {
+
+        private final StringBuffer text = new StringBuffer();
+
+        @Override
+        protected void flush(ChannelHandlerContext ctx, ByteBuf in, ChannelPromise promise) {
+            text.append(in.toString(CharsetUtil.UTF_8));
+            in.clear();
+            promise.setSuccess();
+        }
+    }
+
+    static final class Request {
+
+        final EmbeddedMessageChannel channel;
+        final CountDownLatch latch;
+        private final Body body;
+
+        Request(EmbeddedMessageChannel channel, Body body, CountDownLatch latch) {
+            this.channel = channel;
+            this.body = body;
+            this.latch = latch;
+        }
+
+        /**
+         * Wait for the request to be done and read what was written to the
+         * channel.
+         *
+         * @return The reply
+         */
+        Reply await() throws InterruptedException {
+            assertTrue("Request not done in time", latch.await(10, TimeUnit.SECONDS));
+            channel.runPendingTasks();
+            HttpResponse response = null;
+            for (Object o = channel.readOutbound(); o != null; o = channel.readOutbound()) {
+                if (o instanceof HttpResponse) {
+                    response = (HttpResponse) o;
+                }
+                // A full response carries its body rather than writing it
+                if (o instanceof FullHttpResponse) {
+                    body.text.append(((FullHttpResponse) o).data().toString(CharsetUtil.UTF_8));
+                }
+            }
+            return new Reply(response, body.text.toString());
+        }
+    }
+
+    static final class Reply {
+
+        final HttpResponse response;
+        final String body;
+
+        Reply(HttpResponse response, String body) {
+            this.response = response;
+            this.body = body;
+        }
+
+        int status() {
+            assertNotNull("No response was sent", response);
+            return response.getStatus().code();
+        }
+
+        String header(String name) {
+            assertNotNull("No response was sent", response);
+            return response.headers().get(name);
+        }
+
+        @Override
+        public String toString() {
+            return response + "\n" + body;
+        }
+    }
+}
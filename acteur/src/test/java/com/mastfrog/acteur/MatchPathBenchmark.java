@@ -0,0 +1,114 @@
+/* 
+ * The MIT License
+ *
+ * Copyright 2013 Tim Boudreau.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.mastfrog.acteur;
+
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Compares trying matchPath's regular expressions one at a time with
+ * matching them as a single RegexUnion, as the number of patterns grows.
+ * Not run as part of the build;  run the main method from the test
+ * classpath.
+ *
+ * @author Tim Boudreau
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+public class MatchPathBenchmark {
+
+    @Param({"1", "10", "50", "100", "250", "500"})
+    public int patternCount;
+
+    private Pattern[] patterns;
+    private RegexUnion union;
+    private String lastMatches;
+    private String noneMatch;
+
+    @Setup
+    public void setup() {
+        String[] regexen = new String[patternCount];
+        patterns = new Pattern[patternCount];
+        for (int i = 0; i < patternCount; i++) {
+            regexen[i] = "^api/v1/resource" + i + "/[^/]+/items/\\d+$";
+            patterns[i] = Pattern.compile(regexen[i]);
+        }
+        union = new RegexUnion(regexen);
+        lastMatches = "api/v1/resource" + (patternCount - 1) + "/joe/items/23";
+        noneMatch = "api/v2/nothing/here";
+    }
+
+    private int sequential(String path) {
+        for (int i = 0; i < patterns.length; i++) {
+            if (patterns[i].matcher(path).matches()) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    @Benchmark
+    public int sequentialLastMatches() {
+        return sequential(lastMatches);
+    }
+
+    @Benchmark
+    public int sequentialNoneMatch() {
+        return sequential(noneMatch);
+    }
+
+    @Benchmark
+    public int unionLastMatches() {
+        return union.indexOf(lastMatches);
+    }
+
+    @Benchmark
+    public int unionNoneMatch() {
+        return union.indexOf(noneMatch);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(MatchPathBenchmark.class.getSimpleName())
+                .build()).run();
+    }
+}
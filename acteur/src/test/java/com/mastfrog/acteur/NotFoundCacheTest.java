@@ -0,0 +1,180 @@
+/* 
+ * The MIT License
+ *
+ * Copyright 2013 Tim Boudreau.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.mastfrog.acteur;
+
+import com.google.inject.Inject;
+import com.mastfrog.acteur.server.EventImpl;
+import com.mastfrog.acteur.server.PathFactory;
+import com.mastfrog.acteur.util.Method;
+import com.mastfrog.url.Path;
+import com.mastfrog.url.URL;
+import io.netty.buffer.Unpooled;
+import io.netty.handler.codec.http.DefaultFullHttpRequest;
+import io.netty.handler.codec.http.DefaultFullHttpResponse;
+import io.netty.handler.codec.http.FullHttpResponse;
+import io.netty.handler.codec.http.HttpHeaders;
+import io.netty.handler.codec.http.HttpMethod;
+import io.netty.handler.codec.http.HttpResponseStatus;
+import io.netty.handler.codec.http.HttpVersion;
+import io.netty.util.CharsetUtil;
+import java.net.InetSocketAddress;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author Tim Boudreau
+ */
+public class NotFoundCacheTest {
+
+    @Test
+    public void testCache() {
+        NotFoundCache cache = new NotFoundCache(2, false);
+        Event a = event(HttpMethod.GET, "/wp-admin/login.php");
+        assertNull(cache.get(a));
+        FullHttpResponse resp = new DefaultFullHttpResponse(HttpVersion.HTTP_1_1,
+                HttpResponseStatus.NOT_FOUND, Unpooled.copiedBuffer("Not here", CharsetUtil.UTF_8));
+        resp.headers().add("X-Thing", "foo");
+        resp.headers().add(HttpHeaders.Names.DATE, "yesterday");
+        cache.put(a, resp);
+        assertTrue(cache.contains(event(HttpMethod.GET, "wp-admin/login.php")));
+        assertFalse(cache.contains(event(HttpMethod.HEAD, "wp-admin/login.php")));
+
+        FullHttpResponse cached = (FullHttpResponse) cache.get(event(HttpMethod.GET, "/wp-admin/login.php"));
+        assertNotNull(cached);
+        assertNotSame(resp, cached);
+        assertEquals(HttpResponseStatus.NOT_FOUND, cached.getStatus());
+        assertEquals("foo", cached.headers().get("X-Thing"));
+        assertNotEquals("yesterday", cached.headers().get(HttpHeaders.Names.DATE));
+        assertEquals("Not here", cached.data().toString(CharsetUtil.UTF_8));
+        assertEquals(1, cache.getHits());
+
+        cache.invalidate();
+        assertNull(cache.get(a));
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void testRejectedByPathOnly() throws Exception {
+        // Neither page has an @Route path, so both are tried for every
+        // request, but both reject it by the path alone
+        EmbeddedRequests requests = new EmbeddedRequests(PathApp.class);
+        try {
+            NotFoundCache cache = requests.application.getNotFoundCache();
+            assertEquals(200, requests.get("/things").status());
+            assertEquals(0, cache.size());
+            assertEquals(404, requests.get("/wp-admin/login.php").status());
+            assertEquals(1, cache.size());
+            assertEquals(404, requests.get("/wp-admin/login.php").status());
+            assertEquals(1, cache.getHits());
+            assertEquals(1, cache.getMisses());
+        } finally {
+            requests.shutdown();
+        }
+    }
+
+    @Test
+    public void testRejectedByHeaderIsNotCached() throws Exception {
+        EmbeddedRequests requests = new EmbeddedRequests(HeaderApp.class);
+        try {
+            NotFoundCache cache = requests.application.getNotFoundCache();
+            assertEquals(404, requests.get("/wp-admin/login.php").status());
+            assertEquals(0, cache.size());
+            assertEquals(200, requests.get("/wp-admin/login.php", "X-Key", "1").status());
+            assertEquals(0, cache.getHits());
+        } finally {
+            requests.shutdown();
+        }
+    }
+
+    static class PathApp extends Application {
+
+        PathApp() {
+            add(Things.class);
+            add(Application.helpPageType());
+        }
+    }
+
+    static class HeaderApp extends Application {
+
+        HeaderApp() {
+            add(Things.class);
+            add(Keyed.class);
+        }
+    }
+
+    static class Things extends Page {
+
+        @Inject
+        Things(ActeurFactory af) {
+            add(af.matchMethods(Method.GET));
+            add(af.matchPath("^things$"));
+            add(af.respondWith(HttpResponseStatus.OK, "Things\n"));
+        }
+    }
+
+    static class Keyed extends Page {
+
+        Keyed() {
+            add(RequireKey.class);
+        }
+    }
+
+    static class RequireKey extends Acteur {
+
+        @Inject
+        RequireKey(Event event) {
+            setState(event.getHeader("X-Key") == null ? new RejectedState()
+                    : new RespondWith(HttpResponseStatus.OK, "Keyed\n"));
+        }
+    }
+
+    private static Event event(HttpMethod method, String uri) {
+        DefaultFullHttpRequest req = new DefaultFullHttpRequest(HttpVersion.HTTP_1_1, method, uri);
+        return new EventImpl(req, InetSocketAddress.createUnresolved("localhost", 8080), null, new Paths(), null);
+    }
+
+    private static final class Paths implements PathFactory {
+
+        @Override
+        public Path toPath(String uri) {
+            return Path.parse(uri, true);
+        }
+
+        @Override
+        public URL constructURL(Path path, boolean secure) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public Path toExternalPath(Path path) {
+            return path;
+        }
+
+        @Override
+        public Path toExternalPath(String path) {
+            return Path.parse(path);
+        }
+    }
+}
@@ -0,0 +1,99 @@
+/* 
+ * The MIT License
+ *
+ * Copyright 2013 Tim Boudreau.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.mastfrog.acteur;
+
+import com.mastfrog.url.Path;
+import com.mastfrog.util.ConfigurationError;
+import java.util.Arrays;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author Tim Boudreau
+ */
+public class PathPatternTest {
+
+    @Test
+    public void testLiteralsAndWildcards() {
+        PathPattern p = PathPattern.compile("users/*/items");
+        assertSame(PathCaptures.EMPTY, p.match(Path.parse("users/joe/items", true)));
+        assertSame(PathCaptures.EMPTY, p.match(Path.parse("/users/joe/items/", true)));
+        assertNull(p.match(Path.parse("users/joe", true)));
+        assertNull(p.match(Path.parse("users/joe/items/3", true)));
+        assertNull(p.match(Path.parse("users/joe/things", true)));
+    }
+
+    @Test
+    public void testCaptures() {
+        PathPattern p = PathPattern.compile("users/{user}/items/{id:long}");
+        PathCaptures c = p.match(Path.parse("users/joe/items/12345678901", true));
+        assertNotNull(c);
+        assertEquals(Arrays.asList("user", "id"), c.names());
+        assertEquals("joe", c.get("user"));
+        assertEquals("joe", c.getValue("user"));
+        assertEquals(Long.valueOf(12345678901L), c.getLong("id").get());
+        assertFalse(c.getInt("id").isPresent());
+        assertFalse(c.getInt("user").isPresent());
+        assertNull(c.get("nothing"));
+        assertNull(p.match(Path.parse("users/joe/items/abc", true)));
+
+        PathPattern ints = PathPattern.compile("n/{n:int}");
+        assertEquals(Integer.valueOf(-5), ints.match(Path.parse("n/-5", true)).getInt("n").get());
+        assertNotNull(ints.match(Path.parse("n/2147483647", true)));
+        assertNull(ints.match(Path.parse("n/2147483648", true)));
+        assertNull(ints.match(Path.parse("n/-", true)));
+    }
+
+    @Test
+    public void testEscapedElements() {
+        PathPattern p = PathPattern.compile("users/{user}/items/{id:int}");
+        PathCaptures c = p.match(Path.parse("users/a%20b/items/%342", true));
+        assertNotNull(c);
+        assertEquals("a b", c.get("user"));
+        assertEquals(Integer.valueOf(42), c.getInt("id").get());
+        // Elements of a path which was not decoded are captured as their
+        // text, not in escaped form
+        assertEquals("a b", p.match(Path.parse("users/a b/items/1")).get("user"));
+        assertSame(PathCaptures.EMPTY, PathPattern.compile("a b/c").match(Path.parse("a%20b/c", true)));
+    }
+
+    @Test
+    public void testRemainder() {
+        PathPattern p = PathPattern.compile("files/{root}/**");
+        assertEquals("a", p.match(Path.parse("files/a", true)).get("root"));
+        assertEquals("a", p.match(Path.parse("files/a/b/c", true)).get("root"));
+        assertNull(p.match(Path.parse("files", true)));
+    }
+
+    @Test(expected = ConfigurationError.class)
+    public void testBadType() {
+        PathPattern.compile("users/{id:uuid}");
+    }
+
+    @Test(expected = ConfigurationError.class)
+    public void testBadRemainder() {
+        PathPattern.compile("users/**/items");
+    }
+}
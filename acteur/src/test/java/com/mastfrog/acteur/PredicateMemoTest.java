@@ -0,0 +1,112 @@
+/* 
+ * The MIT License
+ *
+ * Copyright 2013 Tim Boudreau.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.mastfrog.acteur;
+
+import com.google.inject.Inject;
+import com.mastfrog.acteur.util.Method;
+import io.netty.handler.codec.http.HttpResponseStatus;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author Tim Boudreau
+ */
+public class PredicateMemoTest {
+
+    @Test
+    public void testEvaluatedOnceAcrossPages() throws Exception {
+        EmbeddedRequests requests = new EmbeddedRequests(App.class);
+        try {
+            // Each page runs the same three predicates;  the first two pages
+            // then reject the request, so nine are run, but only three
+            // distinct ones are evaluated
+            EmbeddedRequests.Reply reply = requests.get("/things?id=3");
+            assertEquals(reply.toString(), 200, reply.status());
+            assertEquals("Third 3\n", reply.body);
+            // The memo belongs to the request
+            reply = requests.get("/things?id=4");
+            assertEquals("Third 3\n", reply.body);
+        } finally {
+            requests.shutdown();
+        }
+    }
+
+    static class App extends Application {
+
+        App() {
+            add(First.class);
+            add(Second.class);
+            add(Third.class);
+        }
+    }
+
+    static class First extends Page {
+
+        @Inject
+        First(ActeurFactory af) {
+            add(af.matchMethods(Method.GET));
+            add(af.matchPath("^things$"));
+            add(af.requireParameters("id"));
+            add(Reject.class);
+        }
+    }
+
+    static class Second extends Page {
+
+        @Inject
+        Second(ActeurFactory af) {
+            add(af.matchMethods(Method.GET));
+            add(af.matchPath("^things$"));
+            add(af.requireParameters("id"));
+            add(Reject.class);
+        }
+    }
+
+    static class Third extends Page {
+
+        @Inject
+        Third(ActeurFactory af) {
+            add(af.matchMethods(Method.GET));
+            add(af.matchPath("^things$"));
+            add(af.requireParameters("id"));
+            add(Respond.class);
+        }
+    }
+
+    static class Reject extends Acteur {
+
+        Reject() {
+            setState(new RejectedState());
+        }
+    }
+
+    static class Respond extends Acteur {
+
+        @Inject
+        Respond(PredicateMemo memo) {
+            setState(new RespondWith(HttpResponseStatus.OK, "Third " + memo.evaluations() + "\n"));
+        }
+    }
+}
@@ -0,0 +1,60 @@
+/* 
+ * The MIT License
+ *
+ * Copyright 2013 Tim Boudreau.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.mastfrog.acteur;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author Tim Boudreau
+ */
+public class RegexUnionTest {
+
+    @Test
+    public void testFirstMatchingExpressionIsReported() {
+        RegexUnion u = new RegexUnion("^users$", "^users/([^/]+)$", "^(users|people)/.*", "^users/\\d+$");
+        assertTrue(u.isCombined());
+        assertEquals(0, u.indexOf("users"));
+        assertEquals(1, u.indexOf("users/joe"));
+        assertEquals(1, u.indexOf("users/123"));
+        assertEquals(2, u.indexOf("people/joe"));
+        assertEquals(2, u.indexOf("users/joe/items"));
+        assertEquals(-1, u.indexOf("things"));
+    }
+
+    @Test
+    public void testBackReferencesAreNotCombined() {
+        RegexUnion u = new RegexUnion("^a$", "^(x+)/\\1$");
+        assertFalse(u.isCombined());
+        assertEquals(1, u.indexOf("xx/xx"));
+        assertEquals(-1, u.indexOf("xx/x"));
+        assertEquals(0, u.indexOf("a"));
+    }
+
+    @Test
+    public void testCached() {
+        assertSame(RegexUnion.get("^a$", "^b$"), RegexUnion.get("^a$", "^b$"));
+    }
+}
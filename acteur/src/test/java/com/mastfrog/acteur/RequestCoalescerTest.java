@@ -0,0 +1,172 @@
+/* 
+ * The MIT License
+ *
+ * Copyright 2013 Tim Boudreau.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.mastfrog.acteur;
+
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
+import com.google.inject.Inject;
+import com.mastfrog.acteur.util.Headers;
+import com.mastfrog.acteur.util.Method;
+import io.netty.channel.embedded.EmbeddedMessageChannel;
+import io.netty.handler.codec.http.DefaultHttpResponse;
+import io.netty.handler.codec.http.FullHttpResponse;
+import io.netty.handler.codec.http.HttpMethod;
+import io.netty.handler.codec.http.HttpResponse;
+import io.netty.handler.codec.http.HttpResponseStatus;
+import io.netty.handler.codec.http.HttpVersion;
+import io.netty.util.CharsetUtil;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author Tim Boudreau
+ */
+public class RequestCoalescerTest {
+
+    @Test
+    public void testJoinAndLand() throws Exception {
+        RequestCoalescer coalescer = new RequestCoalescer();
+        SettableFuture<CachedResponse> leader = SettableFuture.create();
+        assertNull(coalescer.join("a", leader));
+        ListenableFuture<CachedResponse> follower = coalescer.join("a", SettableFuture.<CachedResponse>create());
+        assertSame(leader, follower);
+        assertNull(coalescer.join("b", SettableFuture.<CachedResponse>create()));
+        assertEquals(2, coalescer.inFlight());
+        assertEquals(2, coalescer.getLed());
+
+        DefaultHttpResponse resp = new DefaultHttpResponse(HttpVersion.HTTP_1_1, HttpResponseStatus.OK);
+        resp.headers().add("X-Foo", "bar");
+        coalescer.land("a", leader, new CachedResponse(resp, "hello".getBytes(CharsetUtil.UTF_8)));
+        assertEquals(1, coalescer.inFlight());
+        assertTrue(follower.isDone());
+
+        FullHttpResponse copy = (FullHttpResponse) follower.get().toResponse();
+        assertEquals("bar", copy.headers().get("X-Foo"));
+        assertNotNull(copy.headers().get("Date"));
+        assertEquals("hello", copy.data().toString(CharsetUtil.UTF_8));
+
+        // The next identical request starts a new flight
+        SettableFuture<CachedResponse> next = SettableFuture.create();
+        assertNull(coalescer.join("a", next));
+        coalescer.land("a", next, null);
+        assertEquals(3, coalescer.getLed());
+    }
+
+    @Test
+    public void testCredentialsInKey() throws Exception {
+        EmbeddedRequests requests = new EmbeddedRequests(App.class);
+        try {
+            EmbeddedMessageChannel channel = requests.channel();
+            Page page = new Plain();
+            String alice = RequestCoalescer.key(page, requests.event(channel, HttpMethod.GET,
+                    "/shared?k=1", "Authorization", "Basic YWxpY2U6YQ=="));
+            String bob = RequestCoalescer.key(page, requests.event(channel, HttpMethod.GET,
+                    "/shared?k=1", "Authorization", "Basic Ym9iOmI="));
+            String anonymous = RequestCoalescer.key(page, requests.event(channel, HttpMethod.GET,
+                    "/shared?k=1"));
+            assertNotEquals(alice, bob);
+            assertNotEquals(alice, anonymous);
+            assertEquals(alice, RequestCoalescer.key(page, requests.event(channel, HttpMethod.GET,
+                    "/shared?k=1", "Authorization", "Basic YWxpY2U6YQ==")));
+            assertNotEquals(anonymous, RequestCoalescer.key(page, requests.event(channel, HttpMethod.GET,
+                    "/shared?k=1", "Cookie", "session=1")));
+
+            // So the second does not wait on the first
+            RequestCoalescer coalescer = requests.deps.getInstance(RequestCoalescer.class);
+            SettableFuture<CachedResponse> first = SettableFuture.create();
+            assertNull(coalescer.join(alice, first));
+            assertNull(coalescer.join(bob, SettableFuture.<CachedResponse>create()));
+            assertEquals(0, coalescer.getMerged());
+        } finally {
+            requests.shutdown();
+        }
+    }
+
+    @Coalesce
+    static class Plain extends Page {
+    }
+
+    @Test
+    public void testFollowers() throws Exception {
+        // A single background thread runs each request up to the page's
+        // bulkhead in the order they arrive
+        EmbeddedRequests requests = new EmbeddedRequests(App.class, "backgroundThreads", "1");
+        try {
+            RequestCoalescer coalescer = requests.deps.getInstance(RequestCoalescer.class);
+            Bulkheads bulkheads = requests.deps.getInstance(Bulkheads.class);
+            EmbeddedRequests.Request leader = requests.start(HttpMethod.GET, "/shared?k=1", "X-Client", "a");
+            requests.gate.awaitStarted();
+            EmbeddedRequests.Request follower = requests.start(HttpMethod.GET, "/shared?k=1", "X-Client", "b");
+            // The follower gives up its place while it waits, leaving one
+            // for a request which cannot wait on the leader
+            EmbeddedRequests.Request other = requests.start(HttpMethod.GET, "/shared?k=2", "X-Client", "c");
+            requests.gate.release();
+
+            EmbeddedRequests.Reply first = leader.await();
+            EmbeddedRequests.Reply second = follower.await();
+            EmbeddedRequests.Reply third = other.await();
+            assertEquals(200, first.status());
+            assertEquals(second.toString(), 200, second.status());
+            assertEquals(third.toString(), 200, third.status());
+            assertEquals("Shared\n", second.body);
+            assertEquals(2, requests.gate.passes.get());
+            assertEquals(1, coalescer.getMerged());
+            // Each is decorated for its own request
+            assertEquals("a", first.header("X-Client"));
+            assertEquals("b", second.header("X-Client"));
+            assertEquals(1, ((HttpResponse) second.response).headers().getAll("X-Client").size());
+            assertEquals(1, ((HttpResponse) second.response).headers().getAll("Date").size());
+            assertEquals(0, bulkheads.getOccupancy(SharedPage.class));
+        } finally {
+            requests.shutdown();
+        }
+    }
+
+    static class App extends Application {
+
+        App() {
+            add(SharedPage.class);
+        }
+
+        @Override
+        protected HttpResponse decorateResponse(Event event, Page page, Acteur action, HttpResponse response) {
+            response = super.decorateResponse(event, page, action, response);
+            Headers.write(Headers.stringHeader("X-Client"), event.getHeader("X-Client"), response);
+            return response;
+        }
+    }
+
+    @Coalesce(parameters = "k")
+    @Bulkhead(threads = 1, queue = 1)
+    @Route(methods = Method.GET, path = "shared")
+    static class SharedPage extends Page {
+
+        @Inject
+        SharedPage(ActeurFactory af) {
+            add(EmbeddedRequests.Hold.class);
+            add(af.respondWith(HttpResponseStatus.OK, "Shared\n"));
+        }
+    }
+}
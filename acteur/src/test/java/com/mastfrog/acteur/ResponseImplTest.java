@@ -0,0 +1,108 @@
+/* 
+ * The MIT License
+ *
+ * Copyright 2013 Tim Boudreau.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.mastfrog.acteur;
+
+import com.mastfrog.acteur.util.Headers;
+import com.mastfrog.acteur.util.Method;
+import io.netty.handler.codec.http.DefaultCookie;
+import io.netty.handler.codec.http.HttpResponse;
+import java.util.Arrays;
+import java.util.EnumSet;
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.joda.time.Duration;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author Tim Boudreau
+ */
+public class ResponseImplTest {
+
+    @Test
+    public void testHeaders() {
+        ResponseImpl response = new ResponseImpl();
+        assertFalse(response.isModified());
+        response.add(Headers.stringHeader("X-Foo"), "a");
+        response.add(Headers.stringHeader("X-Foo"), "b");
+        response.add(Headers.SET_COOKIE, new DefaultCookie("x", "1"));
+        response.add(Headers.SET_COOKIE, new DefaultCookie("y", "2"));
+        response.add(Headers.ALLOW, new Method[]{Method.GET});
+        response.add(Headers.ALLOW, new Method[]{Method.PUT, Method.GET});
+        assertTrue(response.isModified());
+        assertEquals("b", response.get(Headers.stringHeader("X-Foo")));
+        assertEquals(EnumSet.of(Method.GET, Method.PUT),
+                EnumSet.copyOf(Arrays.asList(response.get(Headers.ALLOW))));
+
+        HttpResponse resp = response.toResponse();
+        assertEquals(Arrays.asList("b"), resp.headers().getAll("X-Foo"));
+        assertEquals(2, resp.headers().getAll("Set-Cookie").size());
+
+        response.reset();
+        assertFalse(response.isModified());
+        assertNull(response.get(Headers.stringHeader("X-Foo")));
+    }
+
+    @Test
+    public void testHeadersMatchByNameAndType() {
+        ResponseImpl response = new ResponseImpl();
+        // Names are case-insensitive
+        response.add(Headers.stringHeader("x-foo"), "a");
+        response.add(Headers.stringHeader("X-Foo"), "b");
+        assertEquals("b", response.get(Headers.stringHeader("X-FOO")));
+        // A header of another type with the same name does not replace it
+        response.add(Headers.RETRY_AFTER_DURATION, Duration.standardSeconds(5));
+        response.add(Headers.RETRY_AFTER_DATE, new DateTime(2013, 4, 1, 12, 0, DateTimeZone.UTC));
+        assertEquals(Duration.standardSeconds(5), response.get(Headers.RETRY_AFTER_DURATION));
+        assertNotNull(response.get(Headers.RETRY_AFTER_DATE));
+        response.add(Headers.RETRY_AFTER_DURATION, Duration.standardSeconds(7));
+        assertEquals(Duration.standardSeconds(7), response.get(Headers.RETRY_AFTER_DURATION));
+
+        HttpResponse resp = response.toResponse();
+        assertEquals(Arrays.asList("b"), resp.headers().getAll("X-Foo"));
+        assertEquals(2, resp.headers().getAll("Retry-After").size());
+    }
+
+    @Test
+    public void testActeursWriteIntoCurrentResponse() {
+        ResponseImpl chain = new ResponseImpl();
+        A before = new A();
+        before.add(Headers.stringHeader("X-Before"), "1");
+        ResponseImpl.setCurrent(chain);
+        try {
+            A during = new A();
+            during.add(Headers.stringHeader("X-During"), "2");
+            assertNull(during.ownResponse());
+            chain.merge(before.ownResponse());
+        } finally {
+            ResponseImpl.setCurrent(null);
+        }
+        assertEquals("1", chain.get(Headers.stringHeader("X-Before")));
+        assertEquals("2", chain.get(Headers.stringHeader("X-During")));
+    }
+
+    static class A extends Acteur {
+    }
+}
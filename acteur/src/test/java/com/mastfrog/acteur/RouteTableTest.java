@@ -0,0 +1,332 @@
+/* 
+ * The MIT License
+ *
+ * Copyright 2013 Tim Boudreau.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.mastfrog.acteur;
+
+import com.google.inject.AbstractModule;
+import com.google.inject.Inject;
+import com.google.inject.Module;
+import com.google.inject.name.Names;
+import com.mastfrog.acteur.util.Method;
+import com.mastfrog.url.Path;
+import com.mastfrog.util.ConfigurationError;
+import io.netty.handler.codec.http.HttpResponseStatus;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author Tim Boudreau
+ */
+public class RouteTableTest {
+
+    private final RouteTable table = new RouteTable(Arrays.<Class<? extends Page>>asList(
+            Users.class, UserItems.class, Unrouted.class, Writes.class, Files.class, Deep.class));
+
+    @Test
+    public void testCandidates() {
+        assertEquals(Arrays.asList(Users.class, Unrouted.class, Files.class), find(Method.GET, "users/1234"));
+        assertEquals(Arrays.asList(Unrouted.class, Writes.class), find(Method.PUT, "users/1234"));
+        assertEquals(Arrays.asList(UserItems.class, Unrouted.class, Files.class), find(Method.GET, "/users/1234/items/5"));
+        assertEquals(Arrays.asList(Unrouted.class, Files.class), find(Method.GET, "users"));
+        assertEquals(Arrays.asList(Unrouted.class, Files.class, Deep.class), find(Method.GET, "a/b/c/d/e"));
+        assertEquals(Arrays.asList(Unrouted.class), find(Method.GET, "foo/bar"));
+        assertEquals(Arrays.asList(Unrouted.class, Files.class), find(Method.GET, "files"));
+        assertEquals(Arrays.asList(Unrouted.class), find(Method.POST, "files/x"));
+    }
+
+    @Test(expected = ConfigurationError.class)
+    public void testBadPattern() {
+        RouteTable.validate(Bad.class);
+    }
+
+    @Test
+    public void testMethodsInferredAndNotAllowed() {
+        Map<Class<? extends Page>, ActeurFactory.MatchMethods> inferred = new HashMap<>();
+        inferred.put(Unrouted.class, new ActeurFactory.MatchMethods(null, false, "", Method.DELETE));
+        RouteTable t = new RouteTable(Arrays.<Class<? extends Page>>asList(
+                Unrouted.class, NotAllowed.class), inferred);
+        assertEquals(Arrays.asList(Unrouted.class, NotAllowed.class), find(t, Method.DELETE, "users/1"));
+        assertEquals(Arrays.asList(NotAllowed.class), find(t, Method.GET, "users/1"));
+        assertEquals(Arrays.asList(), find(t, Method.GET, "foo"));
+        assertFalse(t.accepts(1, Method.DELETE));
+        assertTrue(t.accepts(1, Method.PUT));
+        assertTrue(t.accepts(0, Method.DELETE));
+        assertEquals(Arrays.asList(Method.PUT), Arrays.asList(t.methods(1)));
+    }
+
+    @Test
+    public void testFindMatchMethods() {
+        ActeurFactory.MatchMethods get = new ActeurFactory.MatchMethods(null, false, "", Method.GET);
+        ActeurFactory.MatchMethods notSupp = new ActeurFactory.MatchMethods(null, true, "", Method.GET);
+        Acteur predicate = new PredicateActeur() {
+        };
+        Acteur other = new Acteur() {
+        };
+        assertSame(get, ActeurFactory.MatchMethods.find(new P(predicate, get)));
+        assertSame(notSupp, ActeurFactory.MatchMethods.find(new P(notSupp, predicate)));
+        assertNull(ActeurFactory.MatchMethods.find(new P(predicate, notSupp)));
+        assertNull(ActeurFactory.MatchMethods.find(new P(other, get)));
+        assertNull(ActeurFactory.MatchMethods.find(new P(predicate)));
+    }
+
+    @Test
+    public void testCompiledRoutes() {
+        CompiledRoutes compiled = new CompiledRoutes() {
+            @Override
+            public List<Class<? extends Page>> types() {
+                return Arrays.<Class<? extends Page>>asList(Bad.class, Users.class);
+            }
+
+            @Override
+            public void match(Path path, BitSet into) {
+                if (path.size() == 1) {
+                    into.set(1);
+                }
+            }
+        };
+        RouteTable t = new RouteTable(Arrays.<Class<? extends Page>>asList(Unrouted.class, Users.class),
+                Collections.<Class<? extends Page>, ActeurFactory.MatchMethods>emptyMap(), Collections.singletonList(compiled));
+        assertEquals(Arrays.asList(Unrouted.class, Users.class), find(t, Method.GET, "foo"));
+        assertEquals(Arrays.asList(Unrouted.class), find(t, Method.GET, "users/1234"));
+        assertEquals(Arrays.asList(Unrouted.class), find(t, Method.PUT, "foo"));
+    }
+
+    @Test
+    public void testWarmUpUris() {
+        assertEquals("/users/1", WarmUp.sampleUri(Users.class));
+        assertEquals("/users/1/items/1", WarmUp.sampleUri(UserItems.class));
+        assertEquals("/files", WarmUp.sampleUri(Files.class));
+        // Nothing to go on without a route path
+        assertNull(WarmUp.sampleUri(Deep.class));
+        assertNull(WarmUp.sampleUri(Unrouted.class));
+        for (Class<? extends Page> type : Arrays.<Class<? extends Page>>asList(Users.class, UserItems.class, Files.class)) {
+            assertTrue(type.getName(), find(Method.GET, WarmUp.sampleUri(type)).contains(type));
+        }
+    }
+
+    private List<Class<? extends Page>> find(Method method, String path) {
+        return find(table, method, path);
+    }
+
+    @Test
+    public void testInferenceIsOptInAndRequestIndependent() throws Exception {
+        EmbeddedRequests requests = new EmbeddedRequests(InferApp.class);
+        try {
+            assertEquals(404, requests.get("/x").status());
+            assertEquals(Arrays.asList(Gets.class, PerRequest.class),
+                    find(requests.application.routes(), Method.PUT, "x"));
+        } finally {
+            requests.shutdown();
+        }
+        requests = new EmbeddedRequests(InferApp.class, Application.INFER_METHODS_SETTINGS_KEY, "true");
+        try {
+            // The table is built before the first request's scope is entered,
+            // so a page which needs the request is not indexed using it
+            assertEquals(404, requests.get("/x").status());
+            assertEquals(Arrays.asList(PerRequest.class),
+                    find(requests.application.routes(), Method.PUT, "x"));
+        } finally {
+            requests.shutdown();
+        }
+    }
+
+    @Test
+    public void testPagesOnlyBuiltForRequests() throws Exception {
+        EmbeddedRequests requests = new EmbeddedRequests(CountingApp.class);
+        try {
+            EmbeddedRequests.Reply reply = requests.get("/count");
+            assertEquals(reply.toString(), 200, reply.status());
+            // Building the route table does not construct the page
+            assertEquals(1, Counted.constructions.get());
+        } finally {
+            requests.shutdown();
+        }
+    }
+
+    @Test
+    public void testSeveralCompiledRoutes() throws Exception {
+        // As bound by the modules generated for two packages of pages
+        Module a = new AbstractModule() {
+            @Override
+            protected void configure() {
+                bind(CompiledRoutes.class).annotatedWith(Names.named("a")).to(UsersRoutes.class);
+            }
+        };
+        Module b = new AbstractModule() {
+            @Override
+            protected void configure() {
+                bind(CompiledRoutes.class).annotatedWith(Names.named("b")).to(FilesRoutes.class);
+            }
+        };
+        EmbeddedRequests requests = new EmbeddedRequests(CompiledApp.class, new Module[]{a, b});
+        try {
+            RouteTable t = requests.application.routes();
+            assertEquals(Arrays.asList(Users.class), find(t, Method.GET, "users/1"));
+            assertEquals(Arrays.asList(Files.class), find(t, Method.GET, "files/1"));
+            // Neither page's paths are in the trie
+            assertTrue(find(t, Method.GET, "users/1/2").isEmpty());
+        } finally {
+            requests.shutdown();
+        }
+    }
+
+    private List<Class<? extends Page>> find(RouteTable table, Method method, String path) {
+        BitSet set = table.candidates(method, Path.parse(path));
+        List<Class<? extends Page>> result = new ArrayList<>();
+        for (int ix = set.nextSetBit(0); ix >= 0; ix = set.nextSetBit(ix + 1)) {
+            result.add(table.type(ix));
+        }
+        return result;
+    }
+
+    @Route(methods = {Method.GET, Method.HEAD}, path = "users/{id}")
+    static class Users extends Page {
+    }
+
+    @Route(methods = Method.GET, path = "users/*/items/{item}")
+    static class UserItems extends Page {
+    }
+
+    static class Unrouted extends Page {
+    }
+
+    @Route(methods = {Method.PUT, Method.POST}, path = {"users/{id}", "things/{id}"})
+    static class Writes extends Page {
+    }
+
+    @Route(methods = Method.GET, path = {"files/**", "users/**", "a/**"})
+    static class Files extends Page {
+    }
+
+    @Route(minimumPathLength = 5)
+    static class Deep extends Page {
+    }
+
+    @Route(path = "foo/**/bar")
+    static class Bad extends Page {
+    }
+
+    @Route(methods = Method.PUT, methodNotAllowed = true, path = "users/{id}")
+    static class NotAllowed extends Page {
+    }
+
+    static class CountingApp extends Application {
+
+        CountingApp() {
+            add(Counted.class);
+        }
+    }
+
+    static class Counted extends Page {
+
+        static final AtomicInteger constructions = new AtomicInteger();
+
+        @Inject
+        Counted(ActeurFactory af) {
+            constructions.incrementAndGet();
+            add(af.respondWith(HttpResponseStatus.OK, "Counted\n"));
+        }
+    }
+
+    static class CompiledApp extends Application {
+
+        CompiledApp() {
+            add(Users.class);
+            add(Files.class);
+        }
+    }
+
+    static class UsersRoutes implements CompiledRoutes {
+
+        @Override
+        public List<Class<? extends Page>> types() {
+            return Arrays.<Class<? extends Page>>asList(Users.class);
+        }
+
+        @Override
+        public void match(Path path, BitSet into) {
+            if (path.size() == 2 && "users".equals(path.getElements()[0].toString())) {
+                into.set(0);
+            }
+        }
+    }
+
+    static class FilesRoutes implements CompiledRoutes {
+
+        @Override
+        public List<Class<? extends Page>> types() {
+            return Arrays.<Class<? extends Page>>asList(Files.class);
+        }
+
+        @Override
+        public void match(Path path, BitSet into) {
+            if (path.size() > 1 && "files".equals(path.getElements()[0].toString())) {
+                into.set(0);
+            }
+        }
+    }
+
+    static class InferApp extends Application {
+
+        InferApp() {
+            add(Gets.class);
+            add(PerRequest.class);
+        }
+    }
+
+    static class Gets extends Page {
+
+        @Inject
+        Gets(ActeurFactory af) {
+            add(af.matchMethods(Method.GET));
+            add(af.matchPath("^nothing$"));
+        }
+    }
+
+    static class PerRequest extends Page {
+
+        @Inject
+        PerRequest(ActeurFactory af, Event event) {
+            add(af.matchMethods(event.getMethod()));
+            add(af.matchPath("^nothing$"));
+        }
+    }
+
+    static class P extends Page {
+
+        P(Acteur... acteurs) {
+            for (Acteur a : acteurs) {
+                add(a);
+            }
+        }
+    }
+}
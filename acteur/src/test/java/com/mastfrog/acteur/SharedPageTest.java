@@ -0,0 +1,178 @@
+/* 
+ * The MIT License
+ *
+ * Copyright 2013 Tim Boudreau.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.mastfrog.acteur;
+
+import com.google.inject.Inject;
+import com.mastfrog.acteur.util.CacheControl;
+import com.mastfrog.acteur.util.CacheControlTypes;
+import com.mastfrog.acteur.util.Headers;
+import com.mastfrog.acteur.util.Method;
+import com.mastfrog.giulius.Dependencies;
+import io.netty.handler.codec.http.HttpResponseStatus;
+import java.util.Arrays;
+import org.joda.time.Duration;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author Tim Boudreau
+ */
+public class SharedPageTest {
+
+    @Test
+    public void testSharedPageIsImmutable() {
+        Shared page = new Shared();
+        page.getReponseHeaders().setMaxAge(Duration.standardMinutes(1));
+        page.share();
+        assertTrue(page.isShared());
+        assertTrue(page.getReponseHeaders().isFrozen());
+        assertTrue(page.a.shared);
+        assertEquals(Arrays.<Object>asList(page.a), page.getActeurs());
+        CacheControl cc = page.getReponseHeaders().getCacheControl();
+        assertNotNull(cc);
+        assertSame(cc, page.getReponseHeaders().getCacheControl());
+        try {
+            page.add(new A());
+            fail("Acteurs added to a shared page");
+        } catch (IllegalStateException e) {
+            //ok
+        }
+        try {
+            page.getReponseHeaders().addCacheControl(CacheControlTypes.no_cache);
+            fail("Headers of a shared page modified");
+        } catch (IllegalStateException e) {
+            //ok
+        }
+    }
+
+    @Test
+    public void testSharedActeurWritesIntoCurrentResponse() {
+        A a = new A();
+        a.shared = true;
+        ResponseImpl own = a.getResponse();
+        ResponseImpl chain = new ResponseImpl();
+        ResponseImpl.setCurrent(chain);
+        try {
+            assertSame(chain, a.getResponse());
+        } finally {
+            ResponseImpl.setCurrent(null);
+        }
+        assertSame(own, a.getResponse());
+    }
+
+    @Test
+    public void testConstructorHeadersOfSharedActeurs() throws Exception {
+        HeaderActeur a = new HeaderActeur();
+        a.share();
+        try {
+            a.add(Headers.stringHeader("X-Other"), "no");
+            fail("Headers of a shared acteur modified outside a chain");
+        } catch (IllegalStateException e) {
+            //ok
+        }
+        EmbeddedRequests requests = new EmbeddedRequests(App.class);
+        try {
+            for (int i = 0; i < 2; i++) {
+                EmbeddedRequests.Reply reply = requests.get("/shared");
+                assertEquals(reply.toString(), 200, reply.status());
+                assertEquals("yes", reply.header("X-Shared"));
+                assertEquals("shared\n", reply.body);
+            }
+        } finally {
+            requests.shutdown();
+        }
+    }
+
+    @Test
+    public void testUncreatableActeurOfSharedPage() throws Exception {
+        EmbeddedRequests requests = new EmbeddedRequests(App.class);
+        try {
+            EmbeddedRequests.Reply reply = requests.get("/broken");
+            assertEquals(reply.toString(), 500, reply.status());
+            assertTrue(reply.body, reply.body.contains("Could not create " + Broken.class.getName()));
+        } finally {
+            requests.shutdown();
+        }
+    }
+
+    static class App extends Application {
+
+        App() {
+            add(HeaderPage.class);
+            add(BrokenPage.class);
+        }
+    }
+
+    @SharedPage
+    @Route(methods = Method.GET, path = "shared")
+    static class HeaderPage extends Page {
+
+        HeaderPage() {
+            add(new HeaderActeur());
+        }
+    }
+
+    static class HeaderActeur extends Acteur {
+
+        HeaderActeur() {
+            add(Headers.stringHeader("X-Shared"), "yes");
+        }
+
+        @Override
+        public State getState() {
+            return new RespondWith(HttpResponseStatus.OK, "shared\n");
+        }
+    }
+
+    @SharedPage
+    @Route(methods = Method.GET, path = "broken")
+    static class BrokenPage extends Page {
+
+        @Inject
+        BrokenPage(Dependencies deps) {
+            add(Acteur.wrap(Broken.class, deps));
+        }
+    }
+
+    static class Broken extends Acteur {
+
+        Broken() {
+            throw new IllegalArgumentException("Cannot be created");
+        }
+    }
+
+    @SharedPage
+    static class Shared extends Page {
+
+        final A a = new A();
+
+        Shared() {
+            add(a);
+        }
+    }
+
+    static class A extends Acteur {
+    }
+}
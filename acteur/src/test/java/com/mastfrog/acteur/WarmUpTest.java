@@ -0,0 +1,125 @@
+/* 
+ * The MIT License
+ *
+ * Copyright 2013 Tim Boudreau.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.mastfrog.acteur;
+
+import com.google.inject.AbstractModule;
+import com.google.inject.Inject;
+import com.google.inject.Module;
+import com.mastfrog.acteur.util.Method;
+import com.mastfrog.acteur.util.RequestID;
+import io.netty.handler.codec.http.HttpResponseStatus;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author Tim Boudreau
+ */
+public class WarmUpTest {
+
+    static final AtomicInteger logged = new AtomicInteger();
+
+    @Test
+    public void testWarmUpLeavesNoTrace() throws Exception {
+        Module logging = new AbstractModule() {
+            @Override
+            protected void configure() {
+                bind(RequestLogger.class).to(CountingLogger.class);
+            }
+        };
+        EmbeddedRequests requests = new EmbeddedRequests(App.class, new Module[]{logging},
+                WarmUp.WARMUP_SETTINGS_KEY, "true",
+                WarmUp.WARMUP_ITERATIONS_SETTINGS_KEY, "3",
+                AdmissionController.ADMISSION_SETTINGS_KEY, "true",
+                PagesImpl.AFFINITY_SETTINGS_KEY, "true");
+        try {
+            WarmUp warmUp = requests.deps.getInstance(WarmUp.class);
+            // GET of each routed page, three times;  Unrouted is skipped
+            assertEquals(6, warmUp.run());
+            NotFoundCache cache = requests.application.getNotFoundCache();
+            AdmissionController admission = requests.deps.getInstance(AdmissionController.class);
+            assertEquals(0, cache.size());
+            assertEquals(0, admission.getAdmitted());
+            assertEquals(0, logged.get());
+
+            assertEquals(404, requests.get("/never").status());
+            assertEquals(1, cache.size());
+            assertEquals(1, admission.getAdmitted());
+            assertEquals(2, logged.get());
+        } finally {
+            requests.shutdown();
+        }
+    }
+
+    static class App extends Application {
+
+        App() {
+            add(Things.class);
+            add(Never.class);
+            add(Unrouted.class);
+        }
+    }
+
+    @Route(methods = Method.GET, path = "things")
+    static class Things extends Page {
+
+        @Inject
+        Things(ActeurFactory af) {
+            add(af.respondWith(HttpResponseStatus.OK, "Things\n"));
+        }
+    }
+
+    @Route(methods = Method.GET, path = "never")
+    static class Never extends Page {
+
+        @Inject
+        Never(ActeurFactory af) {
+            add(af.matchPath("^nothing$"));
+            add(af.respondWith(HttpResponseStatus.OK, "Never\n"));
+        }
+    }
+
+    static class Unrouted extends Page {
+
+        @Inject
+        Unrouted(ActeurFactory af) {
+            add(af.matchPath("^unrouted$"));
+            add(af.respondWith(HttpResponseStatus.OK, "Unrouted\n"));
+        }
+    }
+
+    static class CountingLogger implements RequestLogger {
+
+        @Override
+        public void onBeforeEvent(RequestID rid, Event event) {
+            logged.incrementAndGet();
+        }
+
+        @Override
+        public void onRespond(RequestID rid, Event event, HttpResponseStatus status) {
+            logged.incrementAndGet();
+        }
+    }
+}
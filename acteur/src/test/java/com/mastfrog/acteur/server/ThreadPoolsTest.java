@@ -0,0 +1,89 @@
+/* 
+ * The MIT License
+ *
+ * Copyright 2013 Tim Boudreau.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.mastfrog.acteur.server;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author Tim Boudreau
+ */
+public class ThreadPoolsTest {
+
+    @Test
+    public void testStats() throws Exception {
+        final CountDownLatch release = new CountDownLatch(1);
+        final CountDownLatch started = new CountDownLatch(1);
+        final AtomicLong rejections = new AtomicLong();
+        ThreadPoolExecutor exe = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<Runnable>(1), new ThreadPoolExecutor.AbortPolicy() {
+            @Override
+            public void rejectedExecution(Runnable r, ThreadPoolExecutor e) {
+                rejections.incrementAndGet();
+                super.rejectedExecution(r, e);
+            }
+        });
+        try {
+            ThreadPools pools = new ThreadPools();
+            pools.register("workers", "blocking", exe, 1, rejections);
+            Runnable block = new Runnable() {
+                @Override
+                public void run() {
+                    started.countDown();
+                    try {
+                        release.await();
+                    } catch (InterruptedException ex) {
+                        throw new AssertionError(ex);
+                    }
+                }
+            };
+            exe.submit(block);
+            started.await(10, TimeUnit.SECONDS);
+            exe.submit(block);
+            try {
+                exe.submit(block);
+                fail("Should have been rejected");
+            } catch (RejectedExecutionException ex) {
+                // expected
+            }
+            ThreadPoolStats stats = pools.get("workers");
+            assertEquals("blocking", stats.getRole());
+            assertEquals(1, stats.getActiveCount());
+            assertEquals(1, stats.getQueueDepth());
+            assertEquals(1, stats.getRejections());
+            assertEquals(1, pools.all().size());
+            assertNull(pools.get("background"));
+        } finally {
+            release.countDown();
+            exe.shutdown();
+        }
+    }
+}
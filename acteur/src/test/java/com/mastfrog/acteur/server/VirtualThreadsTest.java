@@ -0,0 +1,70 @@
+/* 
+ * The MIT License
+ *
+ * Copyright 2013 Tim Boudreau.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.mastfrog.acteur.server;
+
+import java.lang.Thread.UncaughtExceptionHandler;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author Tim Boudreau
+ */
+public class VirtualThreadsTest {
+
+    @Test
+    public void testVirtualThreads() throws Exception {
+        final CountDownLatch latch = new CountDownLatch(1);
+        final AtomicReference<Throwable> thrown = new AtomicReference<>();
+        ExecutorService svc = VirtualThreads.newExecutor("test", new UncaughtExceptionHandler() {
+            @Override
+            public void uncaughtException(Thread t, Throwable e) {
+                thrown.set(e);
+                latch.countDown();
+            }
+        });
+        if (!VirtualThreads.isSupported()) {
+            assertNull(svc);
+            return;
+        }
+        assertNotNull(svc);
+        final AtomicReference<String> name = new AtomicReference<>();
+        svc.execute(new Runnable() {
+            @Override
+            public void run() {
+                name.set(Thread.currentThread().getName());
+                throw new IllegalStateException("expected");
+            }
+        });
+        assertTrue(latch.await(10, TimeUnit.SECONDS));
+        assertTrue(name.get(), name.get().startsWith("test-"));
+        assertTrue(thrown.get() instanceof IllegalStateException);
+        svc.shutdown();
+        assertTrue(svc.awaitTermination(10, TimeUnit.SECONDS));
+    }
+}
@@ -56,6 +56,16 @@ public final class PathElement implements URLComponent {
         return element;
     }
 
+    /**
+     * Get the text of this element without URL escaping - for an element of
+     * a path parsed with decoding, the decoded text.
+     *
+     * @return The text
+     */
+    public String unescaped() {
+        return element;
+    }
+
     PathElement toTrailingSlashElement() {
         return trailingSlash ? this : new PathElement(element, true, noEncode);
     }